@@ -1,16 +1,28 @@
 package gitlet;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
-/** Blob class stores data.
- * @author Devun Amoranto
+/** Blob class stores data.  A blob is named by the SHA-1 hash of the raw
+ *  bytes of one version of a file, and those bytes are what is stored
+ *  in .objects/.  Blobs never hold their contents in memory unless asked
+ *  for them with getContents or getString.
+ *  @author Devun Amoranto
  */
-public class Blob implements Serializable {
+public class Blob {
 
     /** A new blob from file or directory F. */
     public Blob(File f) {
-        _contents = Utils.readContentsAsString(f);
-        _hashString = Utils.sha1(_contents);
+        _file = f;
+        _hashString = Utils.sha1(f);
+    }
+
+    /** The stored blob named ID. */
+    Blob(String id) {
+        _hashString = id;
     }
 
     /** Returns true iff B is the same. */
@@ -18,9 +30,62 @@ public class Blob implements Serializable {
         return b._hashString.equals(this._hashString);
     }
 
-    /** Returns the string of this blob. */
+    /** Returns the contents of this blob, decoded as UTF-8. */
     public String getString() {
-        return _contents;
+        return new String(getContents(), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the contents of this blob. */
+    public byte[] getContents() {
+        if (_file == null) {
+            return ObjectStore.readBytes(_hashString);
+        }
+        try (InputStream in = open()) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the contents of this blob. */
+    public InputStream open() {
+        if (_file != null) {
+            try {
+                return Files.newInputStream(_file.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return ObjectStore.openObject(_hashString);
+    }
+
+    /** Copies the contents of this blob to FILE, creating or replacing
+     *  it (and any missing directories above it).  A stored blob is
+     *  written by ObjectStore.materialize, and any other a buffer at a
+     *  time. */
+    public void writeTo(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        if (_file == null) {
+            ObjectStore.materialize(_hashString, file);
+            return;
+        }
+        try (InputStream in = open();
+             OutputStream out = Files.newOutputStream(file.toPath())) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Saves the contents of the file this blob was made from in
+     *  .objects/, unless it is already there. */
+    public void store() {
+        if (_file != null && !ObjectStore.contains(_hashString)) {
+            ObjectStore.writeObject(_hashString, _file);
+        }
     }
 
     /** Returns the hashed contents. */
@@ -28,10 +93,8 @@ public class Blob implements Serializable {
         return _hashString;
     }
 
-    /** Blob contents. */
-    private String  _contents;
-
-    /** The specific file and version being tracked. */
+    /** The specific file and version being tracked, for blobs that have
+     *  not been read from .objects/. */
     private File _file;
 
     /** The SHA-1 hash of this blob. */
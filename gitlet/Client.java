@@ -0,0 +1,56 @@
+package gitlet;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** A thin front end for gitlet: sends its command to the Daemon serving
+ *  the repository in the current directory and reproduces the daemon's
+ *  output and exit status, or runs the command itself, as Main would,
+ *  if no daemon is listening.
+ *  @author Devun Amoranto
+ */
+public class Client {
+
+    /** Usage: java gitlet.Client ARGS, where ARGS are as for Main. */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].equals("daemon")) {
+            Main.main(args);
+            return;
+        }
+        SocketChannel ch = Daemon.connect();
+        if (ch == null) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (SocketChannel daemon = ch) {
+            Daemon.send(daemon, args);
+            status = receive(daemon);
+        } catch (IOException excp) {
+            System.err.println("Lost connection to the daemon: "
+                               + excp.getMessage());
+            status = 1;
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Copies a reply from the daemon on CH to the standard output and
+     *  error, and returns its exit status. */
+    static int receive(SocketChannel ch) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(ch));
+        int status = in.readInt();
+        byte[] out = new byte[in.readInt()];
+        in.readFully(out);
+        System.out.write(out);
+        System.out.flush();
+        byte[] err = new byte[in.readInt()];
+        in.readFully(err);
+        System.err.write(err);
+        System.err.flush();
+        return status;
+    }
+}
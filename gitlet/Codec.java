@@ -0,0 +1,193 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** The compact binary form in which commits and trees are stored, in
+ *  place of Java serialization.  An encoded object starts with MAGIC, a
+ *  byte saying what kind of object follows, and the version of that
+ *  kind's format as a varint; the fields follow in an order fixed by the
+ *  version.  Numbers and lengths are varints, strings are a length and
+ *  their UTF-8 bytes, and IDs are their 20 binary bytes.  A reader
+ *  accepts every version up to its own, so a new format version never
+ *  makes old objects unreadable.
+ *  @author Devun Amoranto
+ */
+class Codec {
+
+    /** Marks the start of an encoded object. */
+    static final byte[] MAGIC = {'G', 'O', 'B'};
+
+    /** Kinds of object. */
+    static final byte COMMIT = 'c', TREE = 't';
+
+    /** Current format versions of each kind. */
+    static final int COMMIT_VERSION = 1, TREE_VERSION = 1;
+
+    /** Returns true iff OBJ is a kind of object that can be encoded. */
+    static boolean handles(Object obj) {
+        return obj instanceof Commit || obj instanceof Tree;
+    }
+
+    /** Returns the encoded form of OBJ, a commit or a tree. */
+    static byte[] encode(Object obj) {
+        Writer out = new Writer();
+        out.bytes(MAGIC);
+        if (obj instanceof Commit) {
+            out.write(COMMIT);
+            out.varint(COMMIT_VERSION);
+            ((Commit) obj).encode(out);
+        } else if (obj instanceof Tree) {
+            out.write(TREE);
+            out.varint(TREE_VERSION);
+            ((Tree) obj).encode(out);
+        } else {
+            throw Utils.error("cannot encode %s", obj.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns true iff BYTES start like an encoded object. */
+    static boolean isEncoded(byte[] bytes) {
+        return bytes.length >= MAGIC.length
+            && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /** Returns the object encoded in BYTES. */
+    static Object decode(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            throw Utils.error("not an encoded object");
+        }
+        Reader in = new Reader(bytes, MAGIC.length);
+        byte kind = in.next();
+        int version = (int) in.varint();
+        switch (kind) {
+        case COMMIT:
+            checkVersion(version, COMMIT_VERSION);
+            return Commit.decode(in, version);
+        case TREE:
+            checkVersion(version, TREE_VERSION);
+            return Tree.decode(in, version);
+        default:
+            throw Utils.error("unknown object kind %d", kind);
+        }
+    }
+
+    /** Throws an error unless VERSION is a format no newer than LATEST,
+     *  the newest understood. */
+    private static void checkVersion(int version, int latest) {
+        if (version < 1 || version > latest) {
+            throw Utils.error("object format %d is newer than this gitlet",
+                              version);
+        }
+    }
+
+    /** Builds up an encoded object. */
+    static class Writer {
+        /** Appends the unsigned varint N: seven bits a byte, low bits
+         *  first, with the top bit set on all bytes but the last. */
+        void varint(long n) {
+            while ((n & ~0x7fL) != 0) {
+                _out.write((int) (n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            _out.write((int) n);
+        }
+
+        /** Appends the signed number N, zigzag encoded so that small
+         *  negative numbers stay short. */
+        void signed(long n) {
+            varint((n << 1) ^ (n >> (Long.SIZE - 1)));
+        }
+
+        /** Appends the string S, which is not null. */
+        void string(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length);
+            bytes(b);
+        }
+
+        /** Appends the 40-digit hexadecimal ID in binary. */
+        void id(String id) {
+            bytes(Utils.uidBytes(id));
+        }
+
+        /** Appends the byte B. */
+        void write(int b) {
+            _out.write(b);
+        }
+
+        /** Appends B as it is. */
+        void bytes(byte[] b) {
+            _out.write(b, 0, b.length);
+        }
+
+        /** Returns everything appended. */
+        byte[] toByteArray() {
+            return _out.toByteArray();
+        }
+
+        /** The bytes so far. */
+        private final ByteArrayOutputStream _out =
+            new ByteArrayOutputStream();
+    }
+
+    /** Reads the fields of an encoded object in order. */
+    static class Reader {
+        /** Reads BYTES from POSITION on. */
+        Reader(byte[] bytes, int position) {
+            _bytes = bytes;
+            _pos = position;
+        }
+
+        /** Returns the next unsigned varint. */
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                int b = next();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw Utils.error("malformed object");
+        }
+
+        /** Returns the next signed number. */
+        long signed() {
+            long n = varint();
+            return (n >>> 1) ^ -(n & 1);
+        }
+
+        /** Returns the next string. */
+        String string() {
+            int length = (int) varint();
+            return new String(_bytes, skip(length), length,
+                              StandardCharsets.UTF_8);
+        }
+
+        /** Returns the next ID, in hexadecimal. */
+        String id() {
+            return Utils.uidString(_bytes, skip(Utils.UID_BYTES));
+        }
+
+        /** Returns the next byte. */
+        byte next() {
+            return _bytes[skip(1)];
+        }
+
+        /** Moves past the next N bytes, returning where they start. */
+        private int skip(int n) {
+            if (n < 0 || n > _bytes.length - _pos) {
+                throw Utils.error("truncated object");
+            }
+            _pos += n;
+            return _pos - n;
+        }
+
+        /** The encoded object. */
+        private final byte[] _bytes;
+        /** Where the next field starts. */
+        private int _pos;
+    }
+}
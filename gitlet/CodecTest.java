@@ -0,0 +1,88 @@
+package gitlet;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+/** Tests for the binary encoding of commits and trees.
+ * @author Devun Amoranto*/
+public class CodecTest {
+
+    /** Returns the files of a small project. */
+    private HashMap<String, String> files() {
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < 50; i += 1) {
+            files.put("src/File" + i + ".java", Utils.sha1("file", "" + i));
+        }
+        files.put("README", Utils.sha1("readme"));
+        return files;
+    }
+
+    @Test
+    public void commitRoundTrip() {
+        HashSet<File> none = new HashSet<>();
+        Commit parent = new Commit("parent", null, null, none, none,
+                                   "master", false);
+        Commit other = new Commit("other", null, null, none, none,
+                                  null, false);
+        Commit c = new Commit("merged \u00e9", parent, other, files(),
+                              "master");
+        Commit d = (Commit) Codec.decode(Codec.encode(c));
+        assertEquals(c.getCommitID(), d.getCommitID());
+        assertEquals(c.getParentID(), d.getParentID());
+        assertEquals(c.getMergeParentID(), d.getMergeParentID());
+        assertEquals(c.getTreeID(), d.getTreeID());
+        assertEquals(c.getMessage(), d.getMessage());
+        assertEquals(c.getBranch(), d.getBranch());
+        assertEquals(c.getDateInstance(), d.getDateInstance());
+        assertEquals(c.getTimeStamp(), d.getTimeStamp());
+        Commit e = (Commit) Codec.decode(Codec.encode(other));
+        assertNull(e.getParentID());
+        assertNull(e.getBranch());
+    }
+
+    @Test
+    public void treeRoundTrip() {
+        String root = Tree.write(files(), true);
+        Tree t = ObjectStore.readTree(root);
+        byte[] bytes = Codec.encode(t);
+        assertEquals(root, Utils.sha1(bytes));
+        Tree u = (Tree) Codec.decode(bytes);
+        assertEquals(t.fileEntries(), u.fileEntries());
+        assertEquals(t.dirEntries(), u.dirEntries());
+    }
+
+    @Test
+    public void smallerThanSerialized() {
+        Tree t = ObjectStore.readTree(Tree.write(files(), true));
+        Tree src = ObjectStore.readTree(t.dirEntries().get("src"));
+        assertTrue(Codec.encode(src).length
+                   < Utils.serialize(src).length / 2);
+        Commit c = new Commit("message", null, null, files(), "master");
+        assertTrue(Codec.encode(c).length < Utils.serialize(c).length / 3);
+    }
+
+    @Test
+    public void readsSerializedObjects() {
+        Commit c = new Commit("old", null, null, files(), "master");
+        Commit d = Utils.readObject(
+            new ByteArrayInputStream(Utils.serialize(c)), Commit.class);
+        assertEquals(c.getCommitID(), d.getCommitID());
+        assertEquals(c.getTreeID(), d.getTreeID());
+    }
+
+    @Test
+    public void rejectsNewerFormats() {
+        Commit c = new Commit("new", null, null, files(), "master");
+        byte[] bytes = Codec.encode(c);
+        bytes[Codec.MAGIC.length + 1] = Codec.COMMIT_VERSION + 1;
+        try {
+            Codec.decode(bytes);
+            fail("expected a newer format to be rejected");
+        } catch (GitletException e) {
+            assertTrue(e.getMessage().contains("newer"));
+        }
+    }
+}
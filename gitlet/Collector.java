@@ -0,0 +1,202 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/** Finds the objects that can no longer be reached and removes them.
+ *  Every stored ID, loose or packed, is given a position in one sorted
+ *  array, and marking sets the bits of a BitSet at those positions: the
+ *  commits reachable from the roots through their parents, their trees
+ *  (a tree already marked is skipped with everything under it) and the
+ *  blobs the trees name.  Sweeping then deletes the unmarked loose
+ *  objects, in parallel, and rewrites the packs without their unmarked
+ *  objects.  Loose objects written within the grace period are kept, and
+ *  recent commits among them are roots, so that nothing they need is
+ *  removed.
+ *  @author Devun Amoranto
+ */
+class Collector {
+
+    /** A collector for the objects now stored, which keeps loose
+     *  objects younger than GRACE milliseconds. */
+    Collector(long grace) {
+        _cutoff = System.currentTimeMillis() - grace;
+        TreeSet<String> ids = new TreeSet<>(ObjectStore.looseObjects());
+        for (PackFile p : ObjectStore.packs()) {
+            for (int k = 0; k < p.size(); k += 1) {
+                ids.add(p.idAt(k));
+            }
+        }
+        _ids = ids.toArray(new String[0]);
+        _live = new BitSet(_ids.length);
+    }
+
+    /** Returns the grace period, in milliseconds, set in seconds by the
+     *  system property gitlet.gcGrace or the environment variable
+     *  GITLET_GC_GRACE; 0 by default. */
+    static long grace() {
+        String grace = System.getProperty("gitlet.gcGrace",
+                                          System.getenv("GITLET_GC_GRACE"));
+        if (grace == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(grace.trim())) * 1000;
+        } catch (NumberFormatException excp) {
+            return 0;
+        }
+    }
+
+    /** Marks everything reachable from the commits HEADS, and from those
+     *  of COMMITS that are loose objects written within the grace
+     *  period. */
+    void mark(Collection<String> heads, Collection<String> commits) {
+        ArrayDeque<String> pending = new ArrayDeque<>(heads);
+        for (String id : commits) {
+            if (isYoung(id)) {
+                pending.push(id);
+            }
+        }
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            int k = position(id);
+            if (k < 0 || _live.get(k)) {
+                continue;
+            }
+            _live.set(k);
+            _commits.add(id);
+            Commit c = ObjectStore.readCommit(id);
+            if (c.getParentID() != null) {
+                pending.push(c.getParentID());
+            }
+            if (c.getMergeParentID() != null) {
+                pending.push(c.getMergeParentID());
+            }
+            markTree(c.getTreeID());
+        }
+    }
+
+    /** Marks the tree ID, unless it is marked already, and everything
+     *  under it. */
+    private void markTree(String id) {
+        int k = position(id);
+        if (k < 0 || _live.get(k)) {
+            return;
+        }
+        _live.set(k);
+        Tree t = ObjectStore.readTree(id);
+        for (String blob : t.fileEntries().values()) {
+            int b = position(blob);
+            if (b >= 0) {
+                _live.set(b);
+            }
+        }
+        for (String sub : t.dirEntries().values()) {
+            markTree(sub);
+        }
+    }
+
+    /** Deletes the unmarked loose objects older than the grace period,
+     *  and any temporary files left by interrupted writes, in parallel,
+     *  then repacks the packs without their unmarked objects.  Returns
+     *  the number of bytes reclaimed. */
+    long sweep() {
+        File objects = ObjectStore.objects();
+        long before = size(objects);
+        List<String> names = Utils.plainFilenamesIn(objects);
+        if (names != null) {
+            names.parallelStream().forEach(name -> {
+                boolean garbage = name.endsWith(".tmp")
+                    || name.length() == Utils.UID_LENGTH
+                       && !isLive(name);
+                if (garbage && !isYoung(name)
+                        && Utils.join(objects, name).delete()
+                        && !name.endsWith(".tmp")) {
+                    _removed.incrementAndGet();
+                }
+            });
+        }
+        int packed = 0;
+        for (PackFile p : ObjectStore.packs()) {
+            for (int k = 0; k < p.size(); k += 1) {
+                if (!isLive(p.idAt(k))) {
+                    packed += 1;
+                }
+            }
+        }
+        if (packed > 0) {
+            ObjectStore.repack(_commits, this::isLive);
+            _removed.addAndGet(packed);
+        }
+        return before - size(objects);
+    }
+
+    /** Returns the number of objects removed by sweep. */
+    int removed() {
+        return _removed.get();
+    }
+
+    /** Returns the IDs of the commits marked. */
+    Set<String> commits() {
+        return new HashSet<>(_commits);
+    }
+
+    /** Returns true iff the object ID has been marked. */
+    boolean isLive(String id) {
+        int k = position(id);
+        return k >= 0 && _live.get(k);
+    }
+
+    /** Returns true iff the loose object or file NAME was written within
+     *  the grace period. */
+    private boolean isYoung(String name) {
+        return Utils.join(ObjectStore.objects(), name).lastModified()
+            > _cutoff;
+    }
+
+    /** Returns the position of ID among the stored IDs, or -1 if it is
+     *  not stored. */
+    private int position(String id) {
+        if (id == null) {
+            return -1;
+        }
+        int k = Arrays.binarySearch(_ids, id);
+        return k < 0 ? -1 : k;
+    }
+
+    /** Returns the number of bytes in the files under DIR. */
+    static long size(File dir) {
+        if (!dir.exists()) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.map(Path::toFile).filter(File::isFile)
+                .mapToLong(File::length).sum();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Loose objects modified after this time are kept. */
+    private final long _cutoff;
+    /** Every stored ID, sorted. */
+    private final String[] _ids;
+    /** The positions in _ids of the objects marked. */
+    private final BitSet _live;
+    /** The commits marked, in the order marked. */
+    private final List<String> _commits = new ArrayList<>();
+    /** The number of objects removed. */
+    private final AtomicInteger _removed = new AtomicInteger();
+}
@@ -7,6 +7,7 @@ import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.HashMap;
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Date;
 
 /** A commit.
@@ -14,6 +15,14 @@ import java.util.Date;
  */
 public class Commit implements Serializable {
 
+    /** The branch heads in the saved state are serialized by Java, as
+     *  this version of the class. */
+    private static final long serialVersionUID = -5492020830762544463L;
+
+    /** Flags saying which of the optional fields an encoded commit has. */
+    private static final int HAS_ID = 1, HAS_PARENT = 2, HAS_MERGE_PARENT = 4,
+        HAS_BRANCH = 8, HAS_DATE = 16;
+
     /** This commit with MESSAGE and PARENT and MERGEPARENT,
      *  and BRANCH and FILESTOCOMMIT and FILESTOREMOVE.
      SAVEFILE determines if we are serializing this stuff.. */
@@ -24,42 +33,141 @@ public class Commit implements Serializable {
         if (filesToCommit == null) {
             exit("No files have been staged.");
         }
-        _parent = parent;
+        _parentID = parent == null ? null : parent.getCommitID();
         _branchHead = branch;
-        _mergedParent = mergeParent;
-        if (parent == null) {
-            _blobs = new HashMap<String, String>();
-        } else {
-            HashMap<String, String> parentBlobs = _parent.getBlobs();
-            _blobs = new HashMap<String, String>();
-            for (String key : parentBlobs.keySet()) {
-                _blobs.put(key, parentBlobs.get(key));
-            }
-            for (File f : filesToRemove) {
-                _blobs.remove(f.getName());
-            }
-
+        _mergedParentID = mergeParent == null
+                ? null : mergeParent.getCommitID();
+        HashMap<String, String> changes = new HashMap<String, String>();
+        for (File f : filesToRemove) {
+            changes.put(pathName(f), null);
         }
         for (File f : filesToCommit) {
             Blob b = new Blob(f);
-            String hashed = Utils.sha1(Utils.serialize(b));
-            if (!_blobs.containsKey(f.getName())) {
-                _blobs.put(f.getName(), hashed);
-            } else {
-                _blobs.replace(f.getName(), hashed);
-            }
+            changes.put(pathName(f), b.getHash());
             if (saveFile) {
-                File toSave = new File(hashed);
-                writeFile(hashed, b);
+                writeFile(b);
             }
         }
         _message = message;
-        _commitID = Utils.sha1(Utils.serialize(this));
+        _treeID = Tree.update(parent == null ? null : parent.getTreeID(),
+                              changes, saveFile);
+        FileMap parentFiles = parent == null ? null
+            : ObjectStore.cachedFiles(parent.getTreeID());
+        if (saveFile && parentFiles != null) {
+            ObjectStore.cacheFiles(_treeID,
+                                   parentFiles.withChanges(changes));
+        }
+        _commitID = Utils.sha1(Codec.encode(this));
         setTime();
         if (saveFile) {
             writeContents();
+            ObjectStore.cache(this);
+        }
+    }
+    /** A commit with MESSAGE, PARENT, MERGEPARENT and BRANCH, whose files
+     *  are the already stored blobs named in BLOBS, keyed by path. */
+    public Commit(String message, Commit parent, Commit mergeParent,
+                  HashMap<String, String> blobs, String branch) {
+        _parentID = parent == null ? null : parent.getCommitID();
+        _mergedParentID = mergeParent == null
+                ? null : mergeParent.getCommitID();
+        _branchHead = branch;
+        _message = message;
+        _treeID = Tree.write(blobs, true);
+        _commitID = Utils.sha1(Codec.encode(this));
+        setTime();
+        writeContents();
+        ObjectStore.cache(this);
+    }
+
+    /** A commit to be filled in by decode or restore. */
+    private Commit() {
+    }
+
+    /** Writes this commit's fields to OUT, in the current format: a
+     *  varint of flags saying which optional fields are present, then the
+     *  commit's own ID, its parents' IDs, its root tree's ID, its
+     *  message, its branch, and its date in milliseconds with its
+     *  timestamp.  A commit's ID is the hash of this form made before the
+     *  ID and date are set. */
+    void encode(Codec.Writer out) {
+        out.varint((_commitID != null ? HAS_ID : 0)
+                   | (_parentID != null ? HAS_PARENT : 0)
+                   | (_mergedParentID != null ? HAS_MERGE_PARENT : 0)
+                   | (_branchHead != null ? HAS_BRANCH : 0)
+                   | (_date != null ? HAS_DATE : 0));
+        if (_commitID != null) {
+            out.id(_commitID);
+        }
+        if (_parentID != null) {
+            out.id(_parentID);
+        }
+        if (_mergedParentID != null) {
+            out.id(_mergedParentID);
+        }
+        out.id(_treeID);
+        out.string(_message);
+        if (_branchHead != null) {
+            out.string(_branchHead);
+        }
+        if (_date != null) {
+            out.signed(_date.getTime());
+            out.string(_timestamp);
+        }
+    }
+
+    /** Returns the commit whose fields, in format VERSION, are next in
+     *  IN. */
+    static Commit decode(Codec.Reader in, int version) {
+        Commit c = new Commit();
+        long flags = in.varint();
+        c._commitID = (flags & HAS_ID) != 0 ? in.id() : null;
+        c._parentID = (flags & HAS_PARENT) != 0 ? in.id() : null;
+        c._mergedParentID = (flags & HAS_MERGE_PARENT) != 0 ? in.id() : null;
+        c._treeID = in.id();
+        c._message = in.string();
+        c._branchHead = (flags & HAS_BRANCH) != 0 ? in.string() : null;
+        if ((flags & HAS_DATE) != 0) {
+            c._date = new Date(in.signed());
+            c._timestamp = in.string();
         }
+        return c;
     }
+
+    /** Returns the commit named ID, with the parents PARENTID and
+     *  MERGEPARENTID (either may be null), the files of the tree TREEID,
+     *  MESSAGE, BRANCH, and the DATE and TIMESTAMP it was made at, as
+     *  recovered from an older form of commit. */
+    static Commit restore(String id, String parentID, String mergeParentID,
+                          String treeID, String message, String branch,
+                          Date date, String timestamp) {
+        Commit c = new Commit();
+        c._commitID = id;
+        c._parentID = parentID;
+        c._mergedParentID = mergeParentID;
+        c._treeID = treeID;
+        c._message = message;
+        c._branchHead = branch;
+        c._date = date;
+        c._timestamp = timestamp;
+        return c;
+    }
+
+    /** Returns the name under which F is tracked: its path relative to the
+     *  staging area if it is a staged copy, and otherwise relative to the
+     *  working directory, with '/' between directory names. */
+    private String pathName(File f) {
+        Path stage = Utils.join(Main.repository(), ".stage/").toPath()
+            .toAbsolutePath().normalize();
+        Path path = f.toPath().toAbsolutePath().normalize();
+        if (path.startsWith(stage)) {
+            path = stage.relativize(path);
+        } else {
+            path = f.toPath().normalize();
+        }
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
     /** Sets the timestamp. */
     private void setTime() {
         Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
@@ -72,19 +180,35 @@ public class Commit implements Serializable {
         _timestamp = s.format(d);
     }
 
-    /** Returns this commit's parent. */
+    /** Returns this commit's parent, loaded through the object store. */
     public Commit getParent() {
-        return _parent;
+        if (_parentID == null) {
+            return null;
+        }
+        return ObjectStore.readCommit(_parentID);
+    }
+
+    /** Returns the ID of this commit's parent, or null. */
+    public String getParentID() {
+        return _parentID;
     }
 
     /** Returns true if this has a merge parent. */
     public boolean hasMergeParent() {
-        return _mergedParent != null;
+        return _mergedParentID != null;
     }
 
-    /** Returns the merge parent. */
+    /** Returns the merge parent, loaded through the object store. */
     public Commit getMergeParent() {
-        return _mergedParent;
+        if (_mergedParentID == null) {
+            return null;
+        }
+        return ObjectStore.readCommit(_mergedParentID);
+    }
+
+    /** Returns the ID of the merge parent, or null. */
+    public String getMergeParentID() {
+        return _mergedParentID;
     }
     /** Returns the branch head. */
     public String getBranch() {
@@ -93,18 +217,17 @@ public class Commit implements Serializable {
 
     /** Returns the first 7 digits of both parents. */
     public String bothParents() {
-        return "Merge: " + _parent.getCommitID().substring(0, 7)
-                + " " + _mergedParent.getCommitID().substring(0, 7);
+        return "Merge: " + _parentID.substring(0, 7)
+                + " " + _mergedParentID.substring(0, 7);
     }
 
-    /** Returns deserialized file BLOB with NAME in this commit. */
+    /** Returns the file BLOB with NAME in this commit. */
     public Blob getFile(String name) {
-        if (!_blobs.keySet().contains(name)) {
+        String id = fileAsHash(name);
+        if (id == null) {
             return null;
         }
-        String serialized = _blobs.get(name);
-        return Utils.readObject(Utils.join(_workingDirectory,
-                serialized), Blob.class);
+        return ObjectStore.readBlob(id);
     }
 
     /** Returns F as a string. */
@@ -112,35 +235,33 @@ public class Commit implements Serializable {
         return Utils.readContentsAsString(f);
     }
 
-    /** Returns the hashcode of NAME. */
+    /** Returns the hashcode of NAME, which is its blob's ID. */
     public String fileAsHash(String name) {
-        File f = Utils.join(_workingDirectory, _blobs.get(name));
-        Blob b = Utils.readObject(f, Blob.class);
-        return b.getHash();
+        return Tree.find(_treeID, name);
     }
 
-    /** Returns the blobs. */
-    public HashMap<String, String> getBlobs() {
-        return _blobs;
+    /** Returns the blobs, keyed by path.  They are read from this
+     *  commit's trees through the object store, or made from its parent's
+     *  when it is made, sharing all but the changed entries. */
+    public FileMap getBlobs() {
+        return ObjectStore.readFiles(_treeID);
     }
 
+    /** Returns the ID of the root tree of this commit's files. */
+    public String getTreeID() {
+        return _treeID;
+    }
 
-    /** Writes contents (of B with SHA-1 READ) values to .objects/NAME. */
-    private void writeFile(String name, Blob b) {
-        checkPersistence();
-        File result = Utils.join(_workingDirectory, name);
-        try {
-            result.createNewFile();
-        } catch (IOException e) {
-            exit(e.getMessage());
-        }
-        Utils.writeObject(result, b);
+
+    /** Writes the contents of B to .objects/, unless that object is
+     *  already stored loose or in a pack. */
+    private void writeFile(Blob b) {
+        b.store();
     }
 
     /** Exits with MSG. */
     public void exit(String msg) {
-        System.out.println(msg);
-        System.exit(0);
+        throw Utils.error(msg);
     }
 
     /** Returns whether OTHER is the same instance. */
@@ -151,8 +272,7 @@ public class Commit implements Serializable {
 
     /** Writes this to .objects/ folder. */
     private void writeContents() {
-        checkPersistence();
-        File f = Utils.join(_workingDirectory, _commitID);
+        File f = Utils.join(getWorkingDirectory(), _commitID);
         try {
             if (!f.exists()) {
                 f.createNewFile();
@@ -163,13 +283,6 @@ public class Commit implements Serializable {
         Utils.writeObject(f, this);
     }
 
-    /** Makes sure that .objects/ has been initialized. */
-    private void checkPersistence() {
-        if (!_workingDirectory.exists()) {
-            _workingDirectory.mkdir();
-        }
-    }
-
     /** Returns a String representation of this commit. */
     public String toString() {
         return "commit " + _commitID + "\r\n" + "Date: "
@@ -181,9 +294,12 @@ public class Commit implements Serializable {
         return _message;
     }
 
-    /** Returns the working directory. */
+    /** Returns the directory commits are stored in, making it if need
+     *  be. */
     public File getWorkingDirectory() {
-        return _workingDirectory;
+        File dir = ObjectStore.objects();
+        dir.mkdir();
+        return dir;
     }
 
     /** Returns this commit's timestamp. */
@@ -203,20 +319,20 @@ public class Commit implements Serializable {
 
     /** The message of this commit. */
     private String _message;
-    /** The working directory. */
-    private File _workingDirectory = Utils.join(Main.repository(), ".objects/");
     /** This commit's hash value. */
     private String _commitID;
-    /** The staging area. */
-    private File _stage = Utils.join(Main.repository(), ".stage/");
-    /** The files brought in from the staging area to be commited. */
-    private HashMap<String, String> _blobs;
-    /** The optional second parent for a merged commit. */
-    private Commit _mergedParent;
+    /** The ID of the root tree of the files brought in from the staging
+     *  area to be commited.  The trees are stored apart from the commit,
+     *  so that reading a commit reads only its header. */
+    private String _treeID;
+    /** The ID of the optional second parent for a merged commit.
+     *  Parents are kept by ID so that writing or hashing a commit never
+     *  touches the rest of its history. */
+    private String _mergedParentID;
     /** Timestamp. */
     private String _timestamp;
-    /** Parent commit. */
-    private Commit _parent;
+    /** The ID of the parent commit. */
+    private String _parentID;
     /** The name of this commit's branch. */
     private String _branchHead;
     /** For testing purposes, returns this commit's Date instance. */
@@ -0,0 +1,296 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** The shape of the commit history, kept in .gitlet/_commitGraph so that
+ *  ancestry questions can be answered without reading any Commit.  After
+ *  a header ("GCGR", version, unused int) come fixed-size records, one
+ *  per commit in the order the commits were added, parents always before
+ *  children.  Each record holds the commit's 20-byte ID, the positions of
+ *  its parent and merge parent (or -1), and its generation number: one
+ *  more than the largest generation of its parents, with root commits at
+ *  generation 1.  Commits are found by ID through a map from IDs to
+ *  positions, built once when the file is first read.
+ *  @author Devun Amoranto
+ */
+class CommitGraph {
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Header magic number. */
+    private static final byte[] MAGIC = {'G', 'C', 'G', 'R'};
+    /** Length of the file header. */
+    private static final int HEADER = 12;
+    /** Length of one record. */
+    private static final int RECORD = Utils.UID_BYTES + 3 * Integer.BYTES;
+    /** Offset of the parent positions and generation in a record. */
+    private static final int PARENT = Utils.UID_BYTES,
+        MERGE_PARENT = PARENT + Integer.BYTES,
+        GENERATION = MERGE_PARENT + Integer.BYTES;
+
+    /** Flags used while searching for merge bases. */
+    private static final byte FROM_FIRST = 1, FROM_SECOND = 2;
+
+    /** The graph stored in FILE, which need not exist yet. */
+    CommitGraph(File file) {
+        _file = file;
+        map();
+    }
+
+    /** Returns the graph of this repository, building it from the commit
+     *  index if it does not exist yet. */
+    static CommitGraph get() {
+        if (_graph == null) {
+            File file = Utils.join(Main.repository(), "_commitGraph");
+            boolean exists = file.exists();
+            _graph = new CommitGraph(file);
+            if (!exists) {
+                _graph.addAll(CommitIndex.read().ids());
+            }
+        }
+        return _graph;
+    }
+
+    /** Forgets the graph read so far, so that it is read again when next
+     *  needed. */
+    static void reset() {
+        _graph = null;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the position of the commit ID, or -1 if it is not in the
+     *  graph. */
+    int find(String id) {
+        Integer pos = _positions.get(id);
+        return pos == null ? -1 : pos;
+    }
+
+    /** Returns the ID of the commit at position K. */
+    String idAt(int k) {
+        byte[] id = new byte[Utils.UID_BYTES];
+        _map.get(HEADER + k * RECORD, id);
+        return Utils.uidString(id, 0);
+    }
+
+    /** Returns the generation of the commit at position K. */
+    int generation(int k) {
+        return _map.getInt(HEADER + k * RECORD + GENERATION);
+    }
+
+    /** Returns the position of the first parent of the commit at K, or
+     *  -1. */
+    int parent(int k) {
+        return _map.getInt(HEADER + k * RECORD + PARENT);
+    }
+
+    /** Returns the position of the merge parent of the commit at K, or
+     *  -1. */
+    int mergeParent(int k) {
+        return _map.getInt(HEADER + k * RECORD + MERGE_PARENT);
+    }
+
+    /** Adds the commit ID, and any of its ancestors missing from the
+     *  graph, reading them from the object store.  Returns its position. */
+    int add(String id) {
+        int pos = find(id);
+        if (pos >= 0) {
+            return pos;
+        }
+        addAll(Collections.singletonList(id));
+        return find(id);
+    }
+
+    /** Adds the new commit C, whose parents are usually in the graph
+     *  already. */
+    void add(Commit c) {
+        if (find(c.getCommitID()) < 0) {
+            int parent = c.getParentID() == null ? -1 : add(c.getParentID());
+            int merge = c.getMergeParentID() == null
+                ? -1 : add(c.getMergeParentID());
+            ArrayList<String> ids = new ArrayList<>();
+            ArrayList<int[]> records = new ArrayList<>();
+            record(c.getCommitID(), parent, merge, ids, records);
+            append(ids, records);
+        }
+    }
+
+    /** Adds the commits IDS, and any of their ancestors missing from the
+     *  graph, reading them from the object store, parents before
+     *  children.  Their records are collected and written at once. */
+    void addAll(Iterable<String> ids) {
+        ArrayList<String> added = new ArrayList<>();
+        ArrayList<int[]> records = new ArrayList<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        for (String id : ids) {
+            pending.push(id);
+            while (!pending.isEmpty()) {
+                if (find(pending.peek()) >= 0) {
+                    pending.pop();
+                    continue;
+                }
+                Commit c = ObjectStore.readCommit(pending.peek());
+                int parent = position(c.getParentID(), pending);
+                int merge = position(c.getMergeParentID(), pending);
+                if (parent != -2 && merge != -2) {
+                    record(pending.pop(), parent, merge, added, records);
+                }
+            }
+        }
+        append(added, records);
+    }
+
+    /** Returns the ID of a best common ancestor of the commits A and B:
+     *  one that is not an ancestor of any other common ancestor.  Walks
+     *  back from both in order of decreasing generation, so the first
+     *  commit reached from both has the greatest generation of any common
+     *  ancestor, and no commit older than it is ever visited.  A parent
+     *  always has a lower generation than its child, so by the time a
+     *  commit is taken from the queue, every child that could mark it
+     *  already has been. */
+    String mergeBase(String a, String b) {
+        int first = add(a), second = add(b);
+        if (first == second) {
+            return a;
+        }
+        byte[] flags = new byte[_size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> generation(x) != generation(y)
+                ? Integer.compare(generation(y), generation(x))
+                : Integer.compare(y, x));
+        flags[first] = FROM_FIRST;
+        flags[second] = FROM_SECOND;
+        queue.add(first);
+        queue.add(second);
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            byte f = flags[k];
+            if (f == (FROM_FIRST | FROM_SECOND)) {
+                return idAt(k);
+            }
+            for (int p : new int[] {parent(k), mergeParent(k)}) {
+                if (p >= 0 && (flags[p] & f) != f) {
+                    if (flags[p] == 0) {
+                        queue.add(p);
+                    }
+                    flags[p] |= f;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the position of ID, -1 if ID is null, or -2 if ID is not
+     *  in the graph yet, in which case it is pushed on PENDING. */
+    private int position(String id, ArrayDeque<String> pending) {
+        if (id == null) {
+            return -1;
+        }
+        int pos = find(id);
+        if (pos < 0) {
+            pending.push(id);
+            return -2;
+        }
+        return pos;
+    }
+
+    /** Gives ID, with parents at PARENT and MERGE, the next position,
+     *  adding it to IDS and its parents' positions and its generation to
+     *  RECORDS, which hold the records not yet written. */
+    private void record(String id, int parent, int merge,
+                        ArrayList<String> ids, ArrayList<int[]> records) {
+        int generation = 1;
+        for (int p : new int[] {parent, merge}) {
+            if (p >= _size) {
+                generation = Math.max(generation,
+                                      records.get(p - _size)[2] + 1);
+            } else if (p >= 0) {
+                generation = Math.max(generation, generation(p) + 1);
+            }
+        }
+        _positions.put(id, _size + ids.size());
+        ids.add(id);
+        records.add(new int[] {parent, merge, generation});
+    }
+
+    /** Appends the records of IDS, whose parents' positions and
+     *  generations are in RECORDS, to the file. */
+    private void append(ArrayList<String> ids, ArrayList<int[]> records) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(
+            (_size == 0 ? HEADER : 0) + ids.size() * RECORD);
+        if (_size == 0) {
+            buf.put(MAGIC).putInt(VERSION).putInt(0);
+        }
+        for (int i = 0; i < ids.size(); i += 1) {
+            int[] r = records.get(i);
+            buf.put(Utils.uidBytes(ids.get(i))).putInt(r[0]).putInt(r[1])
+                .putInt(r[2]);
+        }
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long at = _size == 0 ? 0 : HEADER + (long) _size * RECORD;
+            while (buf.hasRemaining()) {
+                at += ch.write(buf, at);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map();
+    }
+
+    /** Maps the file, and indexes the positions of the IDs not indexed
+     *  yet. */
+    private void map() {
+        _size = 0;
+        if (!_file.isFile()) {
+            _map = null;
+            _positions.clear();
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(_file.toPath())) {
+            _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (_map.get(i) != MAGIC[i]) {
+                throw Utils.error("not a commit graph: %s", _file);
+            }
+        }
+        _size = Math.max(0, (_map.capacity() - HEADER) / RECORD);
+        for (int k = _positions.size(); k < _size; k += 1) {
+            _positions.put(idAt(k), k);
+        }
+    }
+
+    /** The graph of the current repository, once read. */
+    private static CommitGraph _graph;
+
+    /** The graph file. */
+    private final File _file;
+    /** The mapped file, or null if it does not exist yet. */
+    private MappedByteBuffer _map;
+    /** Number of commits in the graph. */
+    private int _size;
+    /** The position of each commit in the graph, by ID, read once when
+     *  the file is first mapped and kept up to date as records are
+     *  added. */
+    private final HashMap<String, Integer> _positions = new HashMap<>();
+}
@@ -0,0 +1,73 @@
+package gitlet;
+import org.junit.Test;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+/** Tests for merge-base computation on the commit graph.
+ * @author Devun Amoranto*/
+public class CommitGraphTest {
+
+    /** Returns a saved commit with MESSAGE, PARENT and MERGEPARENT. */
+    private static Commit commit(String message, Commit parent,
+                                 Commit mergeParent) {
+        HashSet<File> empty = new HashSet<>();
+        return new Commit(message, parent, mergeParent, empty, empty,
+                "graphTest", true);
+    }
+
+    @Test
+    public void mergeBases() {
+        File f = Utils.join(Main.repository(), "_testCommitGraph");
+        f.delete();
+        CommitGraph graph = new CommitGraph(f);
+        Commit root = commit("graph root", null, null);
+        Commit a1 = commit("graph a1", root, null);
+        Commit b1 = commit("graph b1", root, null);
+        Commit a2 = commit("graph a2", a1, null);
+        Commit b2 = commit("graph b2", b1, a1);
+        Commit a3 = commit("graph a3", a2, null);
+        for (Commit c : new Commit[] {root, a1, b1, a2, b2, a3}) {
+            graph.add(c);
+        }
+        assertEquals(6, graph.size());
+        assertEquals(4, graph.generation(graph.find(a3.getCommitID())));
+        assertEquals(root.getCommitID(),
+                graph.mergeBase(a1.getCommitID(), b1.getCommitID()));
+        assertEquals(a1.getCommitID(),
+                graph.mergeBase(a3.getCommitID(), b2.getCommitID()));
+        assertEquals(a1.getCommitID(),
+                graph.mergeBase(a1.getCommitID(), a3.getCommitID()));
+        CommitGraph reread = new CommitGraph(f);
+        assertEquals(a1.getCommitID(),
+                reread.mergeBase(b2.getCommitID(), a2.getCommitID()));
+        f.delete();
+    }
+
+    @Test
+    public void addAllRebuilds() {
+        File f = Utils.join(Main.repository(), "_testCommitGraph");
+        f.delete();
+        Commit root = commit("rebuild root", null, null);
+        Commit a = commit("rebuild a", root, null);
+        Commit b = commit("rebuild b", root, null);
+        Commit m = commit("rebuild m", a, b);
+        CommitGraph graph = new CommitGraph(f);
+        graph.addAll(Arrays.asList(m.getCommitID(), b.getCommitID()));
+        assertEquals(4, graph.size());
+        assertTrue(graph.find(root.getCommitID())
+                   < graph.find(a.getCommitID()));
+        assertEquals(3, graph.generation(graph.find(m.getCommitID())));
+        CommitGraph reread = new CommitGraph(f);
+        for (Commit c : new Commit[] {root, a, b, m}) {
+            assertEquals(graph.find(c.getCommitID()),
+                         reread.find(c.getCommitID()));
+        }
+        assertEquals(-1, reread.find(Utils.sha1("not a commit")));
+        assertEquals(root.getCommitID(),
+                     reread.mergeBase(a.getCommitID(), b.getCommitID()));
+        f.delete();
+    }
+
+}
@@ -0,0 +1,303 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The IDs of all commits ever made, kept in .gitlet/_commitIndex as a
+ *  memory-mapped array of 20-byte binary IDs.  The file holds a header
+ *  ("GCID", version, number of sorted IDs), the sorted IDs, and then a
+ *  short unsorted tail of IDs appended since the array was last sorted.
+ *  Lookups binary search the sorted part and scan the tail, so opening
+ *  the index and resolving an abbreviated ID take time independent of
+ *  the number of commits.
+ *  @author Devun Amoranto
+ */
+class CommitIndex {
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Once the unsorted tail is longer than this, the file is rewritten
+     *  with all IDs sorted. */
+    static final int MAX_TAIL = 256;
+
+    /** Header magic number. */
+    private static final byte[] MAGIC = {'G', 'C', 'I', 'D'};
+
+    /** Length of the file header. */
+    private static final int HEADER = 12;
+
+    /** The index stored in FILE, which need not exist yet, or kept only
+     *  in memory if FILE is null. */
+    CommitIndex(File file) {
+        _file = file;
+        load();
+    }
+
+    /** Returns the index of the repository.  In a repository not yet
+     *  migrated from the first version of gitlet (see Legacy), it is
+     *  built in memory from the _allCommits set that version kept, so
+     *  that reading the repository writes nothing to it; migrate saves
+     *  it, and then calls removeLegacy. */
+    @SuppressWarnings("unchecked")
+    static CommitIndex read() {
+        File legacy = Utils.join(Main.repository(), "_allCommits");
+        if (legacy.isFile()) {
+            CommitIndex result = new CommitIndex(null);
+            result.addAll(Utils.readObject(legacy, HashSet.class));
+            return result;
+        }
+        return new CommitIndex(file());
+    }
+
+    /** Returns the file holding the repository's index. */
+    static File file() {
+        return Utils.join(Main.repository(), "_commitIndex");
+    }
+
+    /** Returns an index of the same IDs, stored in the repository's
+     *  index file in place of whatever it held. */
+    CommitIndex save() {
+        CommitIndex result = new CommitIndex(file());
+        result.rewrite(ids());
+        return result;
+    }
+
+    /** Deletes the _allCommits set and _abbreviations map kept by older
+     *  versions of gitlet, once the repository has been migrated. */
+    static void removeLegacy() {
+        Utils.join(Main.repository(), "_allCommits").delete();
+        Utils.join(Main.repository(), "_abbreviations").delete();
+    }
+
+    /** Returns the number of IDs. */
+    int size() {
+        return _sorted + _tail.size();
+    }
+
+    /** Returns all IDs: the sorted ones, then the rest. */
+    List<String> ids() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int k) {
+                if (k < _sorted) {
+                    return idAt(k);
+                }
+                return _tail.get(k - _sorted);
+            }
+
+            @Override
+            public int size() {
+                return CommitIndex.this.size();
+            }
+        };
+    }
+
+    /** Returns true iff ID is in the index. */
+    boolean contains(String id) {
+        return id != null && id.length() == Utils.UID_LENGTH
+            && id.equals(resolve(id));
+    }
+
+    /** Returns the unique ID starting with the hexadecimal PREFIX, or null
+     *  if there is none.  Throws GitletException if more than one ID
+     *  starts with PREFIX. */
+    String resolve(String prefix) {
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (Character.digit(prefix.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        String found = null;
+        int lo = 0, hi = _sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo < _sorted && comparePrefix(lo, prefix) == 0) {
+            if (lo + 1 < _sorted && comparePrefix(lo + 1, prefix) == 0) {
+                throw ambiguous(prefix);
+            }
+            found = idAt(lo);
+        }
+        for (String id : _tail) {
+            if (id.startsWith(prefix)) {
+                if (found != null) {
+                    throw ambiguous(prefix);
+                }
+                found = id;
+            }
+        }
+        return found;
+    }
+
+    /** Adds ID, if it is not already present.  It is written just after
+     *  the last whole ID read, and the file cut off after it, so that the
+     *  partial record left by an interrupted add is overwritten rather
+     *  than misaligning every ID added after it. */
+    void add(String id) {
+        if (contains(id)) {
+            return;
+        }
+        if (_file != null && !_file.exists()) {
+            rewrite(Arrays.asList(id));
+            return;
+        }
+        if (_file != null) {
+            try (FileChannel ch = FileChannel.open(_file.toPath(),
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.wrap(Utils.uidBytes(id));
+                long at = HEADER + (long) size() * Utils.UID_BYTES;
+                while (buf.hasRemaining()) {
+                    at += ch.write(buf, at);
+                }
+                ch.truncate(at);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        _tail.add(id);
+        if (_tail.size() > MAX_TAIL) {
+            rewrite(ids());
+        }
+    }
+
+    /** Adds all of IDS. */
+    void addAll(Iterable<String> ids) {
+        List<String> all = new ArrayList<>(ids());
+        for (String id : ids) {
+            all.add(id);
+        }
+        rewrite(all);
+    }
+
+    /** Removes every ID not in KEEP. */
+    void retainAll(Set<String> keep) {
+        List<String> kept = new ArrayList<>();
+        for (String id : ids()) {
+            if (keep.contains(id)) {
+                kept.add(id);
+            }
+        }
+        if (kept.size() < size()) {
+            rewrite(kept);
+        }
+    }
+
+    /** Returns the Kth sorted ID. */
+    private String idAt(int k) {
+        byte[] id = new byte[Utils.UID_BYTES];
+        _map.get(HEADER + k * Utils.UID_BYTES, id);
+        return Utils.uidString(id, 0);
+    }
+
+    /** Compares the Kth sorted ID, cut to the length of PREFIX, with
+     *  PREFIX, a string of hexadecimal digits. */
+    private int comparePrefix(int k, String prefix) {
+        int start = HEADER + k * Utils.UID_BYTES;
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int b = _map.get(start + i / 2) & 0xff;
+            int digit = i % 2 == 0 ? b >> 4 : b & 0xf;
+            int c = Integer.compare(digit,
+                                    Character.digit(prefix.charAt(i), 16));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Replaces the file with the sorted, distinct IDS, writing it to a
+     *  temporary file that is then renamed into place, or replaces the
+     *  index held in memory if there is no file. */
+    private void rewrite(List<String> ids) {
+        String[] sorted = new HashSet<>(ids).toArray(new String[0]);
+        Arrays.sort(sorted);
+        ByteBuffer buf = ByteBuffer.allocate(
+            HEADER + sorted.length * Utils.UID_BYTES);
+        buf.put(MAGIC).putInt(VERSION).putInt(sorted.length);
+        for (String id : sorted) {
+            buf.put(Utils.uidBytes(id));
+        }
+        if (_file == null) {
+            _map = buf;
+            scan();
+            return;
+        }
+        File tmp = new File(_file.getPath() + ".tmp");
+        Utils.writeContents(tmp, buf.array());
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        load();
+    }
+
+    /** Maps the file and reads its unsorted tail. */
+    private void load() {
+        if (_file == null || !_file.isFile()) {
+            _tail = new ArrayList<>();
+            _sorted = 0;
+            _map = null;
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(_file.toPath())) {
+            _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        scan();
+    }
+
+    /** Reads the header and unsorted tail of the index in _map, ignoring
+     *  any partial ID at its end. */
+    private void scan() {
+        _tail = new ArrayList<>();
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (_map.get(i) != MAGIC[i]) {
+                throw Utils.error("not a commit index: %s", _file);
+            }
+        }
+        _sorted = _map.getInt(8);
+        int total = (_map.capacity() - HEADER) / Utils.UID_BYTES;
+        for (int k = _sorted; k < total; k += 1) {
+            _tail.add(idAt(k));
+        }
+    }
+
+    /** Returns the error for an ambiguous PREFIX. */
+    private static GitletException ambiguous(String prefix) {
+        return Utils.error("Ambiguous commit id prefix %s.", prefix);
+    }
+
+    /** The index file, or null if the index is only in memory. */
+    private final File _file;
+    /** The mapped file, the index held in memory, or null if it is
+     *  empty. */
+    private ByteBuffer _map;
+    /** Number of sorted IDs at the start of the file. */
+    private int _sorted;
+    /** IDs after the sorted ones. */
+    private List<String> _tail;
+}
@@ -0,0 +1,108 @@
+package gitlet;
+import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+/** Tests for the sorted commit ID index.
+ * @author Devun Amoranto*/
+public class CommitIndexTest {
+
+    @Test
+    public void addAndResolve() {
+        File f = Utils.join(Main.repository(), "_testCommitIndex");
+        f.delete();
+        CommitIndex index = new CommitIndex(f);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3 * CommitIndex.MAX_TAIL; i += 1) {
+            String id = Utils.sha1("commit " + i);
+            ids.add(id);
+            index.add(id);
+        }
+        index.add(ids.get(0));
+        assertEquals(ids.size(), index.size());
+        CommitIndex reread = new CommitIndex(f);
+        assertEquals(ids.size(), reread.size());
+        for (String id : ids) {
+            assertTrue(reread.contains(id));
+            assertEquals(id, reread.resolve(id.substring(0, 12)));
+            assertEquals(id, reread.resolve(id.toUpperCase()));
+        }
+        assertNull(reread.resolve("not hex"));
+        assertFalse(reread.contains(Utils.sha1("never added")));
+        f.delete();
+    }
+
+    @Test
+    public void retainAll() {
+        File f = Utils.join(Main.repository(), "_testCommitIndex");
+        f.delete();
+        CommitIndex index = new CommitIndex(f);
+        Set<String> keep = new HashSet<>();
+        for (int i = 0; i < 10; i += 1) {
+            String id = Utils.sha1("commit " + i);
+            index.add(id);
+            if (i % 3 == 0) {
+                keep.add(id);
+            }
+        }
+        index.retainAll(keep);
+        CommitIndex reread = new CommitIndex(f);
+        assertEquals(keep.size(), reread.size());
+        for (int i = 0; i < 10; i += 1) {
+            String id = Utils.sha1("commit " + i);
+            assertEquals(keep.contains(id), reread.contains(id));
+        }
+        f.delete();
+    }
+
+    @Test
+    public void tornAdd() throws IOException {
+        File f = Utils.join(Main.repository(), "_testCommitIndex");
+        f.delete();
+        CommitIndex index = new CommitIndex(f);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i += 1) {
+            ids.add(Utils.sha1("torn " + i));
+        }
+        index.add(ids.get(0));
+        index.add(ids.get(1));
+        index.add(ids.get(2));
+        Files.write(f.toPath(), Arrays.copyOf(Utils.uidBytes(ids.get(3)), 7),
+                    StandardOpenOption.APPEND);
+        CommitIndex torn = new CommitIndex(f);
+        assertEquals(3, torn.size());
+        torn.add(ids.get(3));
+        torn.add(ids.get(4));
+        CommitIndex reread = new CommitIndex(f);
+        assertEquals(ids.size(), reread.size());
+        for (String id : ids) {
+            assertTrue(reread.contains(id));
+        }
+        f.delete();
+    }
+
+    @Test
+    public void ambiguousPrefix() {
+        File f = Utils.join(Main.repository(), "_testCommitIndex");
+        f.delete();
+        CommitIndex index = new CommitIndex(f);
+        index.add("ab" + Utils.sha1("x").substring(2));
+        index.add("ab" + Utils.sha1("y").substring(2));
+        try {
+            index.resolve("ab");
+            fail("expected an ambiguous prefix");
+        } catch (GitletException e) {
+            assertTrue(e.getMessage().startsWith("Ambiguous"));
+        }
+        f.delete();
+    }
+
+}
@@ -3,6 +3,7 @@ import org.junit.Test;
 import java.util.Date;
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.HashSet;
 
 import static org.junit.Assert.*;
@@ -57,4 +58,35 @@ public class CommitTest {
         assertEquals(retrieved.getMessage(), c.getMessage());
     }
 
+    @Test
+    public void parentLoadedById() {
+        HashSet<File> emptyList = new HashSet<>();
+        Commit parent = new Commit("parent", null, null,
+                emptyList, emptyList, "branch0", true);
+        Commit child = new Commit("child", parent, null,
+                emptyList, emptyList, "branch0", true);
+        File f = Utils.join(child.getWorkingDirectory(),
+                child.getCommitID());
+        Commit retrieved = Utils.readObject(f, Commit.class);
+        assertEquals(parent.getCommitID(), retrieved.getParentID());
+        assertEquals(parent.getCommitID(),
+                retrieved.getParent().getCommitID());
+        assertFalse(retrieved.hasMergeParent());
+    }
+
+
+    @Test
+    public void filesStoredApart() {
+        HashMap<String, String> blobs = new HashMap<>();
+        blobs.put("a.txt", Utils.sha1("a"));
+        blobs.put("dir/b.txt", Utils.sha1("b"));
+        Commit c = new Commit("files", null, null, blobs, "branch0");
+        Commit same = new Commit("other files", c, null, blobs, "branch0");
+        assertEquals(c.getTreeID(), same.getTreeID());
+        File f = Utils.join(c.getWorkingDirectory(), c.getCommitID());
+        Commit retrieved = Utils.readObject(f, Commit.class);
+        assertEquals(c.getTreeID(), retrieved.getTreeID());
+        assertEquals(blobs, retrieved.getBlobs());
+        assertEquals(Utils.sha1("b"), retrieved.fileAsHash("dir/b.txt"));
+    }
 }
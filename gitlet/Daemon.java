@@ -0,0 +1,147 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A long-running gitlet that serves commands for one repository over the
+ *  Unix-domain socket .gitlet/daemon.sock, so that the state, object
+ *  caches and compiled code of one JVM are reused from command to
+ *  command.  Commands are run one at a time, in the order they arrive.
+ *  A request is the number of arguments followed by each argument (as by
+ *  DataOutputStream.writeUTF).  The reply is the exit status, then the
+ *  length and bytes of the standard output, then those of the standard
+ *  error, of the command.
+ *  @author Devun Amoranto
+ */
+class Daemon {
+
+    /** Returns the socket the daemon listens on. */
+    static File socket() {
+        return Utils.join(Main.repository(), "daemon.sock");
+    }
+
+    /** Serves commands until told to stop. */
+    static void serve() {
+        if (!Main.repository().isDirectory()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        File socket = socket();
+        if (socket.exists()) {
+            if (connect() != null) {
+                throw Utils.error("A daemon is already running.");
+            }
+            socket.delete();
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            socket.deleteOnExit();
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Tells the running daemon to stop. */
+    static void stop() {
+        try (SocketChannel ch = connect()) {
+            if (ch == null) {
+                throw Utils.error("No daemon is running.");
+            }
+            send(ch, "daemon", "stop");
+            Client.receive(ch);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a channel connected to the daemon, or null if none is
+     *  listening. */
+    static SocketChannel connect() {
+        File socket = socket();
+        if (!socket.exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(
+                UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Sends the command ARGS over CH. */
+    static void send(SocketChannel ch, String... args) throws IOException {
+        DataOutputStream out =
+            new DataOutputStream(Channels.newOutputStream(ch));
+        out.writeInt(args.length);
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+    }
+
+    /** Reads a command from CLIENT, runs it, and replies.  Returns false
+     *  iff the command was to stop. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        boolean stop = args.length == 2 && args[0].equals("daemon")
+            && args[1].equals("stop");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(),
+            err = new ByteArrayOutputStream();
+        int status = 0;
+        PrintStream stdout = System.out, stderr = System.err;
+        try (PrintStream o = new PrintStream(out, false,
+                                             StandardCharsets.UTF_8);
+             PrintStream e = new PrintStream(err, false,
+                                             StandardCharsets.UTF_8)) {
+            System.setOut(o);
+            System.setErr(e);
+            try {
+                if (stop) {
+                    o.println("Daemon stopped.");
+                } else {
+                    Main.execute(args);
+                }
+            } catch (RuntimeException | Error excp) {
+                excp.printStackTrace(e);
+                status = 1;
+            }
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        DataOutputStream reply =
+            new DataOutputStream(Channels.newOutputStream(client));
+        reply.writeInt(status);
+        reply.writeInt(out.size());
+        out.writeTo(reply);
+        reply.writeInt(err.size());
+        err.writeTo(reply);
+        reply.flush();
+        return !stop;
+    }
+}
@@ -0,0 +1,141 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Copy/insert delta encoding between two versions of an object, in the
+ *  spirit of git's pack deltas.  A delta starts with the lengths of the
+ *  base and the result, both as varints, followed by a sequence of
+ *  instructions.  An instruction byte with its high bit set copies a run
+ *  of the base (varint offset, varint length follow); otherwise the byte
+ *  is a count of 1 to 127 literal bytes that follow it.
+ *  @author Devun Amoranto
+ */
+class Delta {
+
+    /** Length of the blocks of the base that are indexed for matching. */
+    static final int BLOCK = 16;
+
+    /** Largest number of literal bytes in one insert instruction. */
+    private static final int MAX_INSERT = 127;
+
+    /** Marks a copy instruction. */
+    private static final int COPY = 0x80;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            index.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int insertStart = 0;
+        int j = 0;
+        while (j + BLOCK <= target.length) {
+            Integer at = index.get(hash(target, j));
+            if (at == null || !matches(base, at, target, j, BLOCK)) {
+                j += 1;
+                continue;
+            }
+            int start = at, tStart = j;
+            while (start > 0 && tStart > insertStart
+                   && base[start - 1] == target[tStart - 1]) {
+                start -= 1;
+                tStart -= 1;
+            }
+            int end = at + BLOCK, tEnd = j + BLOCK;
+            while (end < base.length && tEnd < target.length
+                   && base[end] == target[tEnd]) {
+                end += 1;
+                tEnd += 1;
+            }
+            writeInsert(out, target, insertStart, tStart);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, end - start);
+            insertStart = j = tEnd;
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[] {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("delta does not match its base");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++] & 0xff;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, n, len);
+                n += len;
+            } else {
+                System.arraycopy(delta, pos[0], result, n, op);
+                pos[0] += op;
+                n += op;
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Writes TARGET[FROM .. TO) to OUT as insert instructions. */
+    private static void writeInsert(ByteArrayOutputStream out,
+                                    byte[] target, int from, int to) {
+        while (from < to) {
+            int len = Math.min(MAX_INSERT, to - from);
+            out.write(len);
+            out.write(target, from, len);
+            from += len;
+        }
+    }
+
+    /** Returns true iff the LEN bytes of A at I equal those of B at J. */
+    private static boolean matches(byte[] a, int i, byte[] b, int j,
+                                   int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 1;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + data[k];
+        }
+        return h;
+    }
+
+    /** Writes non-negative VAL to OUT in 7-bit groups, low bits first. */
+    static void writeVarint(ByteArrayOutputStream out, long val) {
+        while ((val & ~0x7fL) != 0) {
+            out.write((int) ((val & 0x7f) | 0x80));
+            val >>>= 7;
+        }
+        out.write((int) val);
+    }
+
+    /** Reads a varint from DATA at POS[0], advancing POS[0] past it. */
+    static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[pos[0]++] & 0xff;
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+}
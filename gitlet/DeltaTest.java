@@ -0,0 +1,41 @@
+package gitlet;
+import org.junit.Test;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+/** Tests for the delta encoding used in packs.
+ * @author Devun Amoranto*/
+public class DeltaTest {
+
+    /** Returns S as bytes. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void roundTrip() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            text.append("line number ").append(i).append("\n");
+        }
+        byte[] base = bytes(text.toString());
+        byte[] target = bytes(text.toString().replace("line number 150",
+                "a changed line") + "one more line\n");
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < target.length / 10);
+    }
+
+    @Test
+    public void unrelatedAndEmpty() {
+        byte[] base = bytes("short");
+        byte[] target = bytes("something entirely different");
+        assertArrayEquals(target, Delta.apply(base,
+                Delta.create(base, target)));
+        assertArrayEquals(new byte[0], Delta.apply(base,
+                Delta.create(base, new byte[0])));
+        assertArrayEquals(target, Delta.apply(new byte[0],
+                Delta.create(new byte[0], target)));
+    }
+
+}
@@ -0,0 +1,328 @@
+package gitlet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Longest-common-subsequence matching of sequences, by the linear-space
+ *  version of Myers' O(ND) algorithm, the splitting of texts into lines
+ *  to match, and unified output of the differences between two texts.
+ *  Sequences are arrays of ints, so that lines are compared as single
+ *  numbers.  Common prefixes and suffixes are matched before each search
+ *  starts, so a small change to a large file costs little.  If part of
+ *  the two sequences differs by more than MAX_COST insertions and
+ *  deletions, that part is treated as one change.
+ *  @author Devun Amoranto
+ */
+class Diff {
+
+    /** Largest number of insertions and deletions searched for. */
+    static final int MAX_COST = 1 << 10;
+
+    /** Follows a last line that does not end in a newline. */
+    private static final byte[] NO_NEWLINE =
+        "\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Returns the offsets at which the lines of TEXT start, followed by
+     *  TEXT.length.  Every line but perhaps the last ends with '\n'. */
+    static int[] lines(byte[] text) {
+        int count = 0;
+        for (byte b : text) {
+            if (b == '\n') {
+                count += 1;
+            }
+        }
+        boolean partial = text.length > 0 && text[text.length - 1] != '\n';
+        int[] result = new int[count + (partial ? 1 : 0) + 1];
+        int k = 1;
+        for (int i = 0; i < text.length; i += 1) {
+            if (text[i] == '\n' && i + 1 < text.length) {
+                result[k] = i + 1;
+                k += 1;
+            }
+        }
+        result[result.length - 1] = text.length;
+        return result;
+    }
+
+    /** Returns, for each of TEXTS, whose lines start at the offsets
+     *  in STARTS (as from lines), an array giving each line a number, so
+     *  that two lines get the same number iff they have the same bytes. */
+    static int[][] number(byte[][] texts, int[][] starts) {
+        HashMap<Line, Integer> numbers = new HashMap<>();
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t += 1) {
+            result[t] = new int[starts[t].length - 1];
+            for (int i = 0; i < result[t].length; i += 1) {
+                Line line = new Line(texts[t], starts[t][i],
+                                     starts[t][i + 1]);
+                Integer n = numbers.putIfAbsent(line, numbers.size());
+                result[t][i] = n == null ? numbers.size() - 1 : n;
+            }
+        }
+        return result;
+    }
+
+    /** Returns an array M with M[i] the index of the element of B that
+     *  A[i] is matched with, or -1, for a longest (or, past MAX_COST,
+     *  long) common subsequence of A and B.  Matched indices increase. */
+    static int[] match(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        match(a, 0, a.length, b, 0, b.length, result);
+        return result;
+    }
+
+    /** Matches A[A0 .. A1) with B[B0 .. B1) into RESULT, as for match:
+     *  matches the common prefix and suffix, and then splits what is
+     *  left at the middle of an optimal path and matches each half. */
+    private static void match(int[] a, int a0, int a1, int[] b, int b0,
+                              int b1, int[] result) {
+        while (a0 < a1 && b0 < b1 && a[a0] == b[b0]) {
+            result[a0] = b0;
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a1 > a0 && b1 > b0 && a[a1 - 1] == b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+            result[a1] = b1;
+        }
+        if (a0 == a1 || b0 == b1) {
+            return;
+        }
+        int[] middle = middle(a, a0, a1, b, b0, b1);
+        if (middle != null) {
+            match(a, a0, a0 + middle[0], b, b0, b0 + middle[1], result);
+            match(a, a0 + middle[0], a1, b, b0 + middle[1], b1, result);
+        }
+    }
+
+    /** Returns the point {x, y} at which an optimal path from the start
+     *  of A[A0 .. A1) and B[B0 .. B1) to their ends crosses the middle of
+     *  the search, found by searching forward from the start and backward
+     *  from the end at once, in space linear in the lengths.  Returns
+     *  null if the ranges differ by more than MAX_COST edits. */
+    private static int[] middle(int[] a, int a0, int a1, int[] b, int b0,
+                                int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int maxD = Math.min((n + m + 1) / 2, MAX_COST);
+        int off = maxD + 1, len = 2 * maxD + 3;
+        int[] v1 = new int[len], v2 = new int[len];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[off + 1] = 0;
+        v2[off + 1] = 0;
+        int delta = n - m;
+        boolean front = delta % 2 != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i1 = off + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[i1 - 1] < v1[i1 + 1])) {
+                    x1 = v1[i1 + 1];
+                } else {
+                    x1 = v1[i1 - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[a0 + x1] == b[b0 + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                v1[i1] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int i2 = off + delta - k1;
+                    if (i2 >= 0 && i2 < len && v2[i2] != -1
+                            && x1 >= n - v2[i2]) {
+                        return new int[] {x1, y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i2 = off + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[i2 - 1] < v2[i2 + 1])) {
+                    x2 = v2[i2 + 1];
+                } else {
+                    x2 = v2[i2 - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && a[a1 - x2 - 1] == b[b1 - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                v2[i2] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int i1 = off + delta - k2;
+                    if (i1 >= 0 && i1 < len && v1[i1] != -1) {
+                        int x1 = v1[i1], y1 = off + x1 - i1;
+                        if (x1 >= n - x2) {
+                            return new int[] {x1, y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Writes the differences between the texts A and B, as a unified
+     *  diff with CONTEXT lines of context, to OUT.  Either text may be null
+     *  for a file that does not exist; NAME is the file's name.  Texts with
+     *  a NUL byte are reported only as differing. */
+    static void unified(OutputStream out, String name, byte[] a, byte[] b,
+                        int context) throws IOException {
+        write(out, "diff --gitlet a/%s b/%s\n", name, name);
+        if (isBinary(a) || isBinary(b)) {
+            write(out, "Binary files %s and %s differ\n",
+                  a == null ? "/dev/null" : "a/" + name,
+                  b == null ? "/dev/null" : "b/" + name);
+            return;
+        }
+        write(out, "--- %s\n", a == null ? "/dev/null" : "a/" + name);
+        write(out, "+++ %s\n", b == null ? "/dev/null" : "b/" + name);
+        byte[][] texts = {a == null ? new byte[0] : a,
+                          b == null ? new byte[0] : b};
+        int[][] starts = {lines(texts[0]), lines(texts[1])};
+        int[][] numbers = number(texts, starts);
+        int na = numbers[0].length, nb = numbers[1].length;
+        int[] m = match(numbers[0], numbers[1]);
+        int[] ops = new int[na + nb], ai = new int[na + nb + 1],
+            bi = new int[na + nb + 1];
+        int count = 0;
+        for (int i = 0, j = 0; i < na || j < nb; count += 1) {
+            ai[count] = i;
+            bi[count] = j;
+            if (i < na && m[i] == j) {
+                ops[count] = ' ';
+                i += 1;
+                j += 1;
+            } else if (i < na && m[i] < 0) {
+                ops[count] = '-';
+                i += 1;
+            } else {
+                ops[count] = '+';
+                j += 1;
+            }
+        }
+        ai[count] = na;
+        bi[count] = nb;
+        int k = 0;
+        while (k < count) {
+            while (k < count && ops[k] == ' ') {
+                k += 1;
+            }
+            if (k == count) {
+                break;
+            }
+            int start = Math.max(0, k - context), end = k;
+            while (end < count) {
+                while (end < count && ops[end] != ' ') {
+                    end += 1;
+                }
+                int next = end;
+                while (next < count && ops[next] == ' ') {
+                    next += 1;
+                }
+                if (next == count || next - end > 2 * context) {
+                    end = Math.min(count, end + context);
+                    break;
+                }
+                end = next;
+            }
+            int aLen = ai[end] - ai[start], bLen = bi[end] - bi[start];
+            write(out, "@@ -%d,%d +%d,%d @@\n",
+                  aLen == 0 ? ai[start] : ai[start] + 1, aLen,
+                  bLen == 0 ? bi[start] : bi[start] + 1, bLen);
+            for (int e = start; e < end; e += 1) {
+                if (ops[e] == '+') {
+                    writeLine(out, '+', texts[1], starts[1], bi[e]);
+                } else {
+                    writeLine(out, ops[e], texts[0], starts[0], ai[e]);
+                }
+            }
+            k = end;
+        }
+    }
+
+    /** Returns true iff TEXT has a NUL byte in its first 8000 bytes, as
+     *  git uses to tell binary files. */
+    private static boolean isBinary(byte[] text) {
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(text.length, 8000); i += 1) {
+            if (text[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes line K of TEXT, whose lines start at STARTS, to OUT after
+     *  PREFIX, noting if it has no newline at the end. */
+    private static void writeLine(OutputStream out, int prefix, byte[] text,
+                                  int[] starts, int k) throws IOException {
+        out.write(prefix);
+        out.write(text, starts[k], starts[k + 1] - starts[k]);
+        if (starts[k + 1] == starts[k] || text[starts[k + 1] - 1] != '\n') {
+            out.write(NO_NEWLINE);
+        }
+    }
+
+    /** Writes FORMAT, filled in with ARGS, to OUT as UTF-8. */
+    private static void write(OutputStream out, String format,
+                              Object... args) throws IOException {
+        out.write(String.format(format, args)
+                  .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** A line of a text, compared by its bytes. */
+    private static class Line {
+        /** The line of TEXT from START to END. */
+        Line(byte[] text, int start, int end) {
+            _text = text;
+            _start = start;
+            _end = end;
+            int h = 1;
+            for (int i = start; i < end; i += 1) {
+                h = 31 * h + text[i];
+            }
+            _hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return _hash == other._hash
+                && Arrays.equals(_text, _start, _end,
+                                 other._text, other._start, other._end);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The text the line is in. */
+        private final byte[] _text;
+        /** Where it starts and ends. */
+        private final int _start, _end;
+        /** Its hash code. */
+        private final int _hash;
+    }
+}
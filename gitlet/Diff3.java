@@ -0,0 +1,103 @@
+package gitlet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** A line-by-line three-way merge of two versions of a text against the
+ *  version they both came from, as by diff3.  The lines of each version
+ *  are matched with those of the base.  Runs of base lines matched in
+ *  both versions are stable and copied through; between them, a region
+ *  changed in only one version takes that version, a region changed the
+ *  same way in both takes either, and any other region is a conflict,
+ *  written between markers.  Output is streamed a region at a time.
+ *  @author Devun Amoranto
+ */
+class Diff3 {
+
+    /** Conflict markers. */
+    private static final byte[]
+        START = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8),
+        MIDDLE = "=======\n".getBytes(StandardCharsets.UTF_8),
+        END = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Writes the merge of OURS and THEIRS against BASE to OUT.  Returns
+     *  the number of conflicting regions. */
+    static int merge(byte[] base, byte[] ours, byte[] theirs,
+                     OutputStream out) throws IOException {
+        byte[][] texts = {base, ours, theirs};
+        int[][] starts = {Diff.lines(base), Diff.lines(ours),
+                          Diff.lines(theirs)};
+        int[][] numbers = Diff.number(texts, starts);
+        int[] o = numbers[0], a = numbers[1], b = numbers[2];
+        int[] ma = Diff.match(o, a), mb = Diff.match(o, b);
+        int conflicts = 0;
+        int i = 0, j = 0, k = 0;
+        while (i < o.length || j < a.length || k < b.length) {
+            if (i < o.length && ma[i] == j && mb[i] == k) {
+                write(out, base, starts[0], i, i + 1);
+                i += 1;
+                j += 1;
+                k += 1;
+                continue;
+            }
+            int p = i;
+            while (p < o.length && (ma[p] < 0 || mb[p] < 0)) {
+                p += 1;
+            }
+            int aEnd = p < o.length ? ma[p] : a.length,
+                bEnd = p < o.length ? mb[p] : b.length;
+            if (same(o, i, p, a, j, aEnd)) {
+                write(out, theirs, starts[2], k, bEnd);
+            } else if (same(o, i, p, b, k, bEnd)
+                       || same(a, j, aEnd, b, k, bEnd)) {
+                write(out, ours, starts[1], j, aEnd);
+            } else {
+                conflicts += 1;
+                out.write(START);
+                write(out, ours, starts[1], j, aEnd);
+                endLine(out, ours, starts[1], j, aEnd);
+                out.write(MIDDLE);
+                write(out, theirs, starts[2], k, bEnd);
+                endLine(out, theirs, starts[2], k, bEnd);
+                out.write(END);
+            }
+            i = p;
+            j = aEnd;
+            k = bEnd;
+        }
+        return conflicts;
+    }
+
+    /** Returns true iff X[X0 .. X1) and Y[Y0 .. Y1) are equal. */
+    private static boolean same(int[] x, int x0, int x1,
+                                int[] y, int y0, int y1) {
+        if (x1 - x0 != y1 - y0) {
+            return false;
+        }
+        for (int i = 0; i < x1 - x0; i += 1) {
+            if (x[x0 + i] != y[y0 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes lines FROM .. TO of TEXT, whose lines start at STARTS, to
+     *  OUT. */
+    private static void write(OutputStream out, byte[] text, int[] starts,
+                              int from, int to) throws IOException {
+        if (from < to) {
+            out.write(text, starts[from], starts[to] - starts[from]);
+        }
+    }
+
+    /** Writes a newline to OUT if lines FROM .. TO of TEXT, whose lines
+     *  start at STARTS, are not empty and do not end with one, so that
+     *  the marker after them starts a line. */
+    private static void endLine(OutputStream out, byte[] text, int[] starts,
+                                int from, int to) throws IOException {
+        if (from < to && text[starts[to] - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package gitlet;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+/** Tests for line matching and three-way line merges.
+ * @author Devun Amoranto*/
+public class Diff3Test {
+
+    /** Returns the bytes of S. */
+    private static byte[] b(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the merge of OURS and THEIRS against BASE, followed by the
+     *  number of conflicts. */
+    private static String merge(String base, String ours, String theirs)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int n = Diff3.merge(b(base), b(ours), b(theirs), out);
+        return out.toString(StandardCharsets.UTF_8) + n;
+    }
+
+    @Test
+    public void lines() {
+        assertArrayEquals(new int[] {0}, Diff.lines(b("")));
+        assertArrayEquals(new int[] {0, 2, 4}, Diff.lines(b("a\nb\n")));
+        assertArrayEquals(new int[] {0, 2, 3}, Diff.lines(b("a\nb")));
+    }
+
+    @Test
+    public void longestMatch() {
+        int[] a = {1, 2, 3, 4, 5, 6, 7};
+        int[] c = {2, 9, 3, 5, 7, 8};
+        int[] m = Diff.match(a, c);
+        assertArrayEquals(new int[] {-1, 0, 2, -1, 3, -1, 4}, m);
+        assertArrayEquals(new int[] {0, 1, 2}, Diff.match(new int[] {4, 5, 6},
+                                                          new int[] {4, 5, 6}));
+        assertArrayEquals(new int[] {-1, -1}, Diff.match(new int[] {1, 2},
+                                                         new int[] {}));
+    }
+
+    @Test
+    public void cleanMerges() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("A\nb\nc\nd\nE\n0",
+                     merge(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n"));
+        assertEquals("a\nb\nc\nd\ne\nf\n0",
+                     merge(base, base, "a\nb\nc\nd\ne\nf\n"));
+        assertEquals("a\nB\nc\ne\n0",
+                     merge(base, "a\nB\nc\nd\ne\n", "a\nb\nc\ne\n"));
+        assertEquals("a\nX\nc\nd\ne\n0",
+                     merge(base, "a\nX\nc\nd\ne\n", "a\nX\nc\nd\ne\n"));
+    }
+
+    @Test
+    public void conflicts() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\nc\nd\nE\n1",
+                     merge(base, "a\nB\nc\nd\ne\n", "a\nX\nc\nd\nE\n"));
+        assertEquals("<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n1",
+                     merge("", "ours", "theirs\n"));
+    }
+}
@@ -0,0 +1,84 @@
+package gitlet;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+/** Tests for sequence matching and unified diffs.
+ * @author Devun Amoranto*/
+public class DiffTest {
+
+    /** Returns the length of a longest common subsequence of A and B. */
+    private static int lcs(int[] a, int[] b) {
+        int[][] t = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                t[i][j] = a[i] == b[j] ? t[i + 1][j + 1] + 1
+                    : Math.max(t[i + 1][j], t[i][j + 1]);
+            }
+        }
+        return t[0][0];
+    }
+
+    @Test
+    public void matchIsLongest() {
+        Random r = new Random(61);
+        for (int trial = 0; trial < 500; trial += 1) {
+            int[] a = new int[r.nextInt(40)], b = new int[r.nextInt(40)];
+            for (int i = 0; i < a.length; i += 1) {
+                a[i] = r.nextInt(4);
+            }
+            for (int i = 0; i < b.length; i += 1) {
+                b[i] = r.nextInt(4);
+            }
+            int[] m = Diff.match(a, b);
+            int matched = 0, last = -1;
+            for (int i = 0; i < a.length; i += 1) {
+                if (m[i] >= 0) {
+                    assertTrue(m[i] > last);
+                    assertEquals(a[i], b[m[i]]);
+                    last = m[i];
+                    matched += 1;
+                }
+            }
+            assertEquals(lcs(a, b), matched);
+        }
+    }
+
+    /** Returns the unified diff of A and B, named F. */
+    private static String unified(String a, String b) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.unified(out, "f",
+                     a == null ? null : a.getBytes(StandardCharsets.UTF_8),
+                     b == null ? null : b.getBytes(StandardCharsets.UTF_8),
+                     1);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void unifiedHunks() throws IOException {
+        assertEquals("diff --gitlet a/f b/f\n--- a/f\n+++ b/f\n"
+                     + "@@ -1,3 +1,3 @@\n a\n-b\n+B\n c\n"
+                     + "@@ -6,2 +6,2 @@\n f\n-g\n+G\n",
+                     unified("a\nb\nc\nd\ne\nf\ng\n",
+                             "a\nB\nc\nd\ne\nf\nG\n"));
+        assertEquals("diff --gitlet a/f b/f\n--- a/f\n+++ b/f\n"
+                     + "@@ -1,4 +1,4 @@\n a\n-b\n+B\n c\n-d\n+D\n",
+                     unified("a\nb\nc\nd\n", "a\nB\nc\nD\n"));
+    }
+
+    @Test
+    public void addedRemovedAndBinary() throws IOException {
+        assertEquals("diff --gitlet a/f b/f\n--- /dev/null\n+++ b/f\n"
+                     + "@@ -0,0 +1,1 @@\n+x\n\\ No newline at end of file\n",
+                     unified(null, "x"));
+        assertEquals("diff --gitlet a/f b/f\n--- a/f\n+++ /dev/null\n"
+                     + "@@ -1,1 +0,0 @@\n-x\n",
+                     unified("x\n", null));
+        assertEquals("diff --gitlet a/f b/f\n"
+                     + "Binary files a/f and b/f differ\n",
+                     unified("a\0", "b\0"));
+    }
+}
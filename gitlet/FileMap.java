@@ -0,0 +1,384 @@
+package gitlet;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/** An immutable map from paths to blob IDs, kept as a hash array mapped
+ *  trie.  Each node covers five bits of the keys' hashes, and holds a
+ *  bitmap of which of its 32 slots are in use followed by just those
+ *  slots, each a key and its value or a child node.  Keys whose hashes
+ *  are wholly alike share a last node, searched in order.  A changed map
+ *  copies only the nodes on the way to each changed key and shares the
+ *  rest with the map it came from, so a commit's files can be had from
+ *  its parent's in time and space proportional to the number of changed
+ *  files.  Values are never null.
+ *  @author Devun Amoranto
+ */
+class FileMap extends AbstractMap<String, String> {
+
+    /** The map with no entries. */
+    static final FileMap EMPTY = new FileMap(Node.EMPTY, 0);
+
+    /** Bits of the hash used at each level. */
+    private static final int BITS = 5;
+    /** Selects one level's bits. */
+    private static final int MASK = (1 << BITS) - 1;
+    /** Shift at which the hash is used up. */
+    private static final int HASH_BITS = Integer.SIZE;
+    /** Deepest a path through the trie can be. */
+    private static final int MAX_DEPTH = HASH_BITS / BITS + 2;
+
+    /** A map with the entries under ROOT, of which there are SIZE. */
+    private FileMap(Node root, int size) {
+        _root = root;
+        _size = size;
+    }
+
+    /** Returns a map with the entries of FILES. */
+    static FileMap of(Map<String, String> files) {
+        if (files instanceof FileMap) {
+            return (FileMap) files;
+        }
+        if (files.isEmpty()) {
+            return EMPTY;
+        }
+        return new FileMap(build(new ArrayList<>(files.entrySet()), 0),
+                           files.size());
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        return _root.get((String) key, hash((String) key), 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    /** Returns this map with KEY taken to VALUE. */
+    FileMap with(String key, String value) {
+        boolean[] added = new boolean[1];
+        Node root = _root.put(key, value, hash(key), 0, added);
+        if (root == _root) {
+            return this;
+        }
+        return new FileMap(root, _size + (added[0] ? 1 : 0));
+    }
+
+    /** Returns this map without KEY. */
+    FileMap without(String key) {
+        Node root = _root.remove(key, hash(key), 0);
+        if (root == _root) {
+            return this;
+        }
+        return new FileMap(root, _size - 1);
+    }
+
+    /** Returns this map with CHANGES made, each taking a key to its new
+     *  value or to null for a key to remove. */
+    FileMap withChanges(Map<String, String> changes) {
+        FileMap result = this;
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                result = result.without(e.getKey());
+            } else {
+                result = result.with(e.getKey(), e.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Entries(_root);
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    /** Returns the hash of KEY, with its high bits folded into the low
+     *  ones that pick the first slots. */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> (HASH_BITS / 2));
+    }
+
+    /** Returns the node holding ENTRIES, whose hashes agree below SHIFT. */
+    private static Node build(List<Map.Entry<String, String>> entries,
+                              int shift) {
+        if (shift >= HASH_BITS) {
+            Object[] array = new Object[2 * entries.size()];
+            for (int i = 0; i < entries.size(); i += 1) {
+                array[2 * i] = entries.get(i).getKey();
+                array[2 * i + 1] = entries.get(i).getValue();
+            }
+            return new Node(0, array);
+        }
+        List<List<Map.Entry<String, String>>> slots = new ArrayList<>();
+        for (int i = 0; i <= MASK; i += 1) {
+            slots.add(null);
+        }
+        int bitmap = 0;
+        for (Map.Entry<String, String> e : entries) {
+            int slot = (hash(e.getKey()) >>> shift) & MASK;
+            if (slots.get(slot) == null) {
+                slots.set(slot, new ArrayList<>());
+                bitmap |= 1 << slot;
+            }
+            slots.get(slot).add(e);
+        }
+        Object[] array = new Object[2 * Integer.bitCount(bitmap)];
+        int k = 0;
+        for (List<Map.Entry<String, String>> slot : slots) {
+            if (slot == null) {
+                continue;
+            }
+            if (slot.size() == 1) {
+                array[k] = slot.get(0).getKey();
+                array[k + 1] = slot.get(0).getValue();
+            } else {
+                array[k + 1] = build(slot, shift + BITS);
+            }
+            k += 2;
+        }
+        return new Node(bitmap, array);
+    }
+
+    /** One node of the trie.  Below HASH_BITS, ARRAY holds a key and its
+     *  value, or null and a child node, for each bit set in BITMAP;
+     *  at HASH_BITS, it holds keys and values only, in no order. */
+    private static final class Node {
+        /** The node with no entries. */
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        /** A node with BITMAP and ARRAY. */
+        Node(int bitmap, Object[] array) {
+            _bitmap = bitmap;
+            _array = array;
+        }
+
+        /** Returns the value of KEY, whose hash is HASH, in this node at
+         *  level SHIFT, or null. */
+        String get(String key, int hash, int shift) {
+            if (shift >= HASH_BITS) {
+                int i = find(key);
+                return i < 0 ? null : (String) _array[i + 1];
+            }
+            int bit = bit(hash, shift);
+            if ((_bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * index(bit);
+            Object k = _array[i], v = _array[i + 1];
+            if (k == null) {
+                return ((Node) v).get(key, hash, shift + BITS);
+            }
+            return key.equals(k) ? (String) v : null;
+        }
+
+        /** Returns this node, at level SHIFT, with KEY, whose hash is
+         *  HASH, taken to VALUE, setting ADDED[0] if KEY is new.  Returns
+         *  this node itself if nothing changes. */
+        Node put(String key, String value, int hash, int shift,
+                 boolean[] added) {
+            if (shift >= HASH_BITS) {
+                int i = find(key);
+                if (i >= 0) {
+                    return value.equals(_array[i + 1])
+                        ? this : set(i, key, value);
+                }
+                added[0] = true;
+                return insert(_array.length, 0, key, value);
+            }
+            int bit = bit(hash, shift), i = 2 * index(bit);
+            if ((_bitmap & bit) == 0) {
+                added[0] = true;
+                return insert(i, bit, key, value);
+            }
+            Object k = _array[i], v = _array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(key, value, hash,
+                                            shift + BITS, added);
+                return child == v ? this : set(i, null, child);
+            }
+            if (key.equals(k)) {
+                return value.equals(v) ? this : set(i, key, value);
+            }
+            added[0] = true;
+            boolean[] ignored = new boolean[1];
+            Node child = EMPTY
+                .put((String) k, (String) v, hash((String) k),
+                     shift + BITS, ignored)
+                .put(key, value, hash, shift + BITS, ignored);
+            return set(i, null, child);
+        }
+
+        /** Returns this node, at level SHIFT, without KEY, whose hash is
+         *  HASH, or this node itself if it does not hold KEY. */
+        Node remove(String key, int hash, int shift) {
+            if (shift >= HASH_BITS) {
+                int i = find(key);
+                return i < 0 ? this : delete(i, 0);
+            }
+            int bit = bit(hash, shift);
+            if ((_bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * index(bit);
+            Object k = _array[i], v = _array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).remove(key, hash, shift + BITS);
+                if (child == v) {
+                    return this;
+                }
+                return child._array.length == 0
+                    ? delete(i, bit) : set(i, null, child);
+            }
+            return key.equals(k) ? delete(i, bit) : this;
+        }
+
+        /** Returns the index in _array of KEY in a last node, or -1. */
+        private int find(String key) {
+            for (int i = 0; i < _array.length; i += 2) {
+                if (key.equals(_array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Returns a copy of this node with slot I holding KEY and
+         *  VALUE. */
+        private Node set(int i, Object key, Object value) {
+            Object[] array = _array.clone();
+            array[i] = key;
+            array[i + 1] = value;
+            return new Node(_bitmap, array);
+        }
+
+        /** Returns a copy of this node with KEY and VALUE put at I, for
+         *  the bitmap bit BIT. */
+        private Node insert(int i, int bit, Object key, Object value) {
+            Object[] array = new Object[_array.length + 2];
+            System.arraycopy(_array, 0, array, 0, i);
+            array[i] = key;
+            array[i + 1] = value;
+            System.arraycopy(_array, i, array, i + 2, _array.length - i);
+            return new Node(_bitmap | bit, array);
+        }
+
+        /** Returns a copy of this node without slot I, for the bitmap bit
+         *  BIT. */
+        private Node delete(int i, int bit) {
+            Object[] array = new Object[_array.length - 2];
+            System.arraycopy(_array, 0, array, 0, i);
+            System.arraycopy(_array, i + 2, array, i, array.length - i);
+            return new Node(_bitmap & ~bit, array);
+        }
+
+        /** Returns the bitmap bit for HASH at level SHIFT. */
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        /** Returns the number of slots in use before BIT. */
+        private int index(int bit) {
+            return Integer.bitCount(_bitmap & (bit - 1));
+        }
+
+        /** Which slots are in use. */
+        private final int _bitmap;
+        /** The slots in use. */
+        private final Object[] _array;
+    }
+
+    /** Iterates over the entries under a node, depth first. */
+    private static final class Entries
+        implements Iterator<Map.Entry<String, String>> {
+
+        /** Iterates over the entries under ROOT. */
+        Entries(Node root) {
+            push(root);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (_next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> result = _next;
+            advance();
+            return result;
+        }
+
+        /** Starts on the slots of NODE. */
+        private void push(Node node) {
+            _depth += 1;
+            _arrays[_depth] = node._array;
+            _positions[_depth] = 0;
+        }
+
+        /** Finds the next entry, leaving it in _next, or null at the
+         *  end. */
+        private void advance() {
+            _next = null;
+            while (_depth >= 0) {
+                Object[] array = _arrays[_depth];
+                int p = _positions[_depth];
+                if (p >= array.length) {
+                    _depth -= 1;
+                    continue;
+                }
+                _positions[_depth] = p + 2;
+                if (array[p] == null) {
+                    push((Node) array[p + 1]);
+                } else {
+                    _next = new SimpleImmutableEntry<>((String) array[p],
+                                                       (String) array[p + 1]);
+                    return;
+                }
+            }
+        }
+
+        /** The slots of the nodes on the way down. */
+        private final Object[][] _arrays = new Object[MAX_DEPTH][];
+        /** The next slot to visit in each. */
+        private final int[] _positions = new int[MAX_DEPTH];
+        /** The level being visited, or -1 when done. */
+        private int _depth = -1;
+        /** The next entry, or null. */
+        private Map.Entry<String, String> _next;
+    }
+
+    /** The root node. */
+    private final Node _root;
+    /** The number of entries. */
+    private final int _size;
+}
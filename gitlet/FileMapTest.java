@@ -0,0 +1,62 @@
+package gitlet;
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+/** Tests for the persistent file map.
+ * @author Devun Amoranto*/
+public class FileMapTest {
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(61);
+        HashMap<String, String> expected = new HashMap<>();
+        FileMap map = FileMap.EMPTY;
+        for (int i = 0; i < 20000; i += 1) {
+            String key = "dir" + random.nextInt(50) + "/f"
+                + random.nextInt(200);
+            if (random.nextInt(4) == 0) {
+                expected.remove(key);
+                map = map.without(key);
+            } else {
+                String value = Utils.sha1(key, "" + i);
+                expected.put(key, value);
+                map = map.with(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(expected, new HashMap<>(map));
+        assertEquals(map, FileMap.of(expected));
+    }
+
+    @Test
+    public void persistent() {
+        FileMap a = FileMap.EMPTY.with("a.txt", "1").with("b.txt", "2");
+        FileMap b = a.with("a.txt", "3").without("b.txt");
+        assertEquals("1", a.get("a.txt"));
+        assertEquals("2", a.get("b.txt"));
+        assertEquals("3", b.get("a.txt"));
+        assertFalse(b.containsKey("b.txt"));
+        assertTrue(a == a.with("a.txt", "1"));
+        assertTrue(a == a.without("c.txt"));
+    }
+
+    @Test
+    public void collisions() {
+        String[] keys = {"AaAa", "AaBB", "BBAa", "BBBB"};
+        HashMap<String, String> changes = new HashMap<>();
+        for (String key : keys) {
+            changes.put(key, key.toLowerCase());
+        }
+        FileMap map = FileMap.EMPTY.withChanges(changes);
+        assertEquals(changes, map);
+        assertEquals(changes, FileMap.of(changes));
+        changes.put("AaBB", null);
+        map = map.withChanges(changes);
+        assertEquals(3, map.size());
+        assertNull(map.get("AaBB"));
+        assertEquals("bbbb", map.get("BBBB"));
+    }
+}
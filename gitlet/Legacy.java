@@ -0,0 +1,202 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Reads the objects written by the first version of gitlet.  That
+ *  version serialized each Commit with its whole history (its parents
+ *  were Commits, not IDs) and a map from file names to the IDs of
+ *  serialized Blobs that held each file's contents as a String.  Their
+ *  class descriptors are recognized by their serialVersionUIDs and read
+ *  into the stand-in classes OldCommit and OldBlob, with the same fields.
+ *  Each OldCommit is then converted in memory as it is read: its files'
+ *  contents become raw blobs, their names a Tree, and the commit, under
+ *  its old ID, a Commit.  Nothing is written.  The converted trees, and
+ *  the old blobs behind the converted blobs, are kept here for
+ *  ObjectStore to find through open until migrate stores them (see
+ *  pending), or the repository changes and reset drops them; there is
+ *  one entry for each version of a file or directory in the old
+ *  history.  Commands that would write to a repository not yet
+ *  migrated are refused, as what they wrote could name objects that
+ *  exist only here.
+ *  @author Devun Amoranto
+ */
+class Legacy {
+
+    /** The serialVersionUIDs of the first version's Commit and Blob. */
+    static final long COMMIT_UID = 4067555208501372078L,
+        BLOB_UID = 588344476216520469L;
+
+    /** Reads serialized objects, reading those of the first version of
+     *  gitlet as OldCommits and OldBlobs. */
+    static class Input extends ObjectInputStream {
+        /** Reads from IN. */
+        Input(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals(Commit.class.getName())
+                    && desc.getSerialVersionUID() == COMMIT_UID) {
+                return ObjectStreamClass.lookup(OldCommit.class);
+            } else if (desc.getName().equals(Blob.class.getName())
+                    && desc.getSerialVersionUID() == BLOB_UID) {
+                return ObjectStreamClass.lookup(OldBlob.class);
+            }
+            return desc;
+        }
+    }
+
+    /** Returns true iff the repository was written by the first version
+     *  of gitlet and has not been migrated: the _allCommits set that
+     *  version kept is still there. */
+    static boolean present() {
+        return Utils.join(Main.repository(), "_allCommits").isFile();
+    }
+
+    /** Returns the commit OLD, whose parents have been converted already,
+     *  converted to a Commit.  Commits are cached by ObjectStore, as the
+     *  same ancestors are read with every descendant. */
+    static synchronized Commit convert(OldCommit old) {
+        Object cached = ObjectStore.cache().get(old._commitID);
+        if (cached instanceof Commit) {
+            return (Commit) cached;
+        }
+        HashMap<String, String> files = new HashMap<>();
+        if (old._blobs != null) {
+            for (Map.Entry<String, String> e : old._blobs.entrySet()) {
+                files.put(e.getKey(), convertBlob(e.getValue()));
+            }
+        }
+        Commit c = Commit.restore(old._commitID, id(old._parent),
+                                  id(old._mergedParent),
+                                  Tree.make(files, TREES), old._message,
+                                  old._branchHead, old._date,
+                                  old._timestamp);
+        ObjectStore.cache(c);
+        return c;
+    }
+
+    /** Returns a stream of the contents of the converted tree or blob ID,
+     *  or null if it is not one. */
+    static synchronized InputStream open(String id) {
+        Tree t = TREES.get(id);
+        if (t != null) {
+            return new ByteArrayInputStream(Codec.encode(t));
+        }
+        String old = BLOBS.get(id);
+        if (old != null) {
+            return new ByteArrayInputStream(contents(old));
+        }
+        return null;
+    }
+
+    /** Returns the contents of every converted tree and blob, by ID, for
+     *  migrate to store. */
+    static synchronized Map<String, byte[]> pending() {
+        HashMap<String, byte[]> result = new HashMap<>();
+        for (Map.Entry<String, Tree> e : TREES.entrySet()) {
+            result.put(e.getKey(), Codec.encode(e.getValue()));
+        }
+        for (Map.Entry<String, String> e : BLOBS.entrySet()) {
+            result.put(e.getKey(), contents(e.getValue()));
+        }
+        return result;
+    }
+
+    /** Forgets the trees and blobs converted so far. */
+    static synchronized void reset() {
+        TREES.clear();
+        BLOBS.clear();
+        NEW_IDS.clear();
+    }
+
+    /** Returns the ID of the raw blob holding the contents of the old
+     *  serialized blob OLDID. */
+    private static String convertBlob(String oldID) {
+        String result = NEW_IDS.get(oldID);
+        if (result == null) {
+            result = Utils.sha1(contents(oldID));
+            NEW_IDS.put(oldID, result);
+            BLOBS.put(result, oldID);
+        }
+        return result;
+    }
+
+    /** Returns the contents of the old serialized blob ID. */
+    private static byte[] contents(String id) {
+        String contents = ObjectStore.read(id, OldBlob.class)._contents;
+        return (contents == null ? "" : contents)
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the ID of PARENT, a converted commit, or null. */
+    private static String id(Object parent) {
+        return parent == null ? null : ((Commit) parent).getCommitID();
+    }
+
+    /** The fields of the first version's Commit.  Read in its place, and
+     *  replaced by the converted Commit. */
+    static class OldCommit implements Serializable {
+        /** Stands in for the first version's Commit. */
+        private static final long serialVersionUID = COMMIT_UID;
+
+        /** Returns the converted commit to read in place of this. */
+        private Object readResolve() {
+            return convert(this);
+        }
+
+        /** The message. */
+        private String _message;
+        /** Where objects were kept. */
+        private File _workingDirectory;
+        /** The commit's ID. */
+        private String _commitID;
+        /** The staging area. */
+        private File _stage;
+        /** Old blob IDs, by file name. */
+        private HashMap<String, String> _blobs;
+        /** The merge parent, converted to a Commit, or null. */
+        private Object _mergedParent;
+        /** The timestamp. */
+        private String _timestamp;
+        /** The parent, converted to a Commit, or null. */
+        private Object _parent;
+        /** The branch it was made on. */
+        private String _branchHead;
+        /** When it was made. */
+        private Date _date;
+    }
+
+    /** The trees converted and not yet stored, by ID. */
+    private static final HashMap<String, Tree> TREES = new HashMap<>();
+    /** The IDs of the old blobs holding the contents of the converted
+     *  blobs not yet stored, by the converted blobs' IDs. */
+    private static final HashMap<String, String> BLOBS = new HashMap<>();
+    /** The IDs of converted blobs, by the IDs of the old blobs. */
+    private static final HashMap<String, String> NEW_IDS = new HashMap<>();
+
+    /** The fields of the first version's Blob. */
+    static class OldBlob implements Serializable {
+        /** Stands in for the first version's Blob. */
+        private static final long serialVersionUID = BLOB_UID;
+
+        /** The file's contents. */
+        private String _contents;
+        /** The file it was made from. */
+        private File _file;
+        /** The SHA-1 of its contents. */
+        private String _hashString;
+    }
+}
@@ -1,12 +1,27 @@
 package gitlet;
 import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.io.Serializable;
 import java.util.regex.Pattern;
-import java.util.Set;
+import java.util.stream.IntStream;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Devun Amoranto
@@ -14,43 +29,139 @@ import java.util.Set;
 public class Main {
     /** Variables that need serialization. */
     static final String [] VARIABLES = new String[] {
-        "_activePointer", "_stagedToAdd", "_abbreviations",
-        "_stagedToRemove", "_branches", "_currentBranch",
-        "_allCommits"};
+        "_activePointer", "_stagedToAdd",
+        "_stagedToRemove", "_branches", "_currentBranch"};
+    /** The variables each command reads, by command name.  The others
+     *  are not deserialized while it runs, and are left null. */
+    private static final HashMap<String, String[]> READS =
+        new HashMap<String, String[]>();
+    /** The variables each command may change, by command name.  Only
+     *  these are written back, and only if they have changed. */
+    private static final HashMap<String, String[]> WRITES =
+        new HashMap<String, String[]>();
+    static {
+        String[] none = new String[0];
+        String[] head = new String[] {"_activePointer"};
+        String[] stage = new String[] {
+            "_activePointer", "_stagedToAdd", "_stagedToRemove"};
+        String[] stageOnly = new String[] {"_stagedToAdd", "_stagedToRemove"};
+        String[] branches = new String[] {"_activePointer", "_branches"};
+        READS.put("init", none);
+        WRITES.put("init", VARIABLES);
+        READS.put("add", stage);
+        WRITES.put("add", stageOnly);
+        READS.put("commit", VARIABLES);
+        WRITES.put("commit", new String[] {
+            "_activePointer", "_branches", "_stagedToAdd", "_stagedToRemove"});
+        READS.put("rm", stage);
+        WRITES.put("rm", stageOnly);
+        READS.put("log", head);
+        WRITES.put("log", none);
+        READS.put("global-log", none);
+        WRITES.put("global-log", none);
+        READS.put("find", none);
+        WRITES.put("find", none);
+        READS.put("status", VARIABLES);
+        WRITES.put("status", none);
+        READS.put("checkout", VARIABLES);
+        WRITES.put("checkout", new String[] {
+            "_activePointer", "_stagedToAdd", "_stagedToRemove",
+            "_currentBranch"});
+        READS.put("branch", branches);
+        WRITES.put("branch", new String[] {"_branches"});
+        READS.put("rm-branch", new String[] {"_branches", "_currentBranch"});
+        WRITES.put("rm-branch", new String[] {"_branches"});
+        READS.put("reset", VARIABLES);
+        WRITES.put("reset", new String[] {
+            "_activePointer", "_branches", "_stagedToAdd", "_stagedToRemove"});
+        READS.put("merge", VARIABLES);
+        WRITES.put("merge", VARIABLES);
+        READS.put("repack", none);
+        WRITES.put("repack", none);
+        READS.put("diff", VARIABLES);
+        WRITES.put("diff", none);
+        READS.put("search", none);
+        WRITES.put("search", none);
+        READS.put("migrate", VARIABLES);
+        WRITES.put("migrate", VARIABLES);
+        READS.put("gc", new String[] {
+            "_activePointer", "_branches", "_stagedToAdd", "_stagedToRemove"});
+        WRITES.put("gc", none);
+    }
     /** The place where files are found. */
     private static File _repository = new File(".gitlet/");
     /** The active pointer. */
     private static Commit _activePointer;
-    /** Abbreviated commit ID's. */
-    private static HashMap<String, String> _abbreviations;
-    /** Tracks all commits ever made. */
-    private static HashSet<String> _allCommits;
+    /** Tracks all commits ever made, and resolves abbreviated IDs. */
+    private static CommitIndex _allCommits;
     /** The current branch. */
     private static String _currentBranch;
-    /** All the commit and blob objects. */
-    private static File _objects = Utils.join(_repository, ".objects/");
     /** The staging area. */
     private static HashSet<String> _stagedToAdd;
     /** Files staged to be removed. */
     private static HashSet<String> _stagedToRemove;
-    /** The staged merge parent. */
-    private static Commit _merger;
     /** The staging area. */
     private static File _stage = Utils.join(_repository, ".stage/");
     /** All of the branch heads. */
     private static HashMap<String, Commit> _branches;
+    /** Where the variables are kept. */
+    private static StateFile _state;
+    /** The command being run. */
+    private static String _command;
     /** Command pattern. */
 
     private static final Pattern COMMAND = Pattern.compile("FIXME");
 
+    /** Lines of context shown around each change by diff. */
+    private static final int DIFF_CONTEXT = 3;
+
+    /** Commits read and formatted at once by global-log. */
+    private static final int LOG_CHUNK = 1 << 10;
+
+    /** Matches paths that are glob patterns. */
+    private static final Pattern GLOB = Pattern.compile("[*?\\[{]");
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
-        if (args.length == 0) {
-            exit("Please enter a command.");
+        if (args.length > 0 && args[0].equals("daemon")) {
+            try {
+                if (args.length == 1) {
+                    Daemon.serve();
+                } else if (args.length == 2 && args[1].equals("stop")) {
+                    Daemon.stop();
+                } else {
+                    exit("Incorrect operands.");
+                }
+            } catch (GitletException e) {
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+        execute(args);
+    }
+
+    /** Runs the command ARGS, printing the message of any error that ends
+     *  it.  Unlike main, this may be called many times in one JVM, as it
+     *  is by the Daemon. */
+    static void execute(String... args) {
+        try {
+            if (args.length == 0) {
+                exit("Please enter a command.");
+            }
+            updatePersistence(args[0]);
+            processCommand(args);
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            StatCache.flush();
+            if (_state != null) {
+                _state.restamp();
+            }
+            if (Boolean.getBoolean("gitlet.stats")) {
+                System.err.println("object cache: " + ObjectStore.cache());
+            }
         }
-        updatePersistence();
-        processCommand(args);
     }
 
     /** Returns an array of Strings ARGS into a single line. */
@@ -69,48 +180,78 @@ public class Main {
     public static File repository() {
         return _repository;
     }
-    /** Updates the values of this to match persistence. */
-    @SuppressWarnings("unchecked")
-    private static void updatePersistence() {
+    /** Updates the values of this to match persistence, reading only the
+     *  variables that COMMAND needs. */
+    private static void updatePersistence(String command) {
+        _command = command;
+        _activePointer = null;
+        _branches = null;
+        _stagedToAdd = null;
+        _currentBranch = null;
+        _stagedToRemove = null;
         if (_repository.exists()) {
-            for (String v : VARIABLES) {
-                File f = Utils.join(_repository, v);
-                if (v.equals("_activePointer")) {
-                    _activePointer = Utils.readObject(f, Commit.class);
-
-                } else if (v.equals("_branches")) {
-                    _branches = Utils.readObject(f, HashMap.class);
-                } else if (v.equals("_stagedToAdd")) {
-                    _stagedToAdd = Utils.readObject(f, HashSet.class);
-                } else if (v.equals("_currentBranch")) {
-                    _currentBranch = Utils.readObject(f, String.class);
-                } else if (v.equals("_abbreviations")) {
-                    _abbreviations = Utils.readObject(f, HashMap.class);
-                } else if (v.equals("_allCommits")) {
-                    _allCommits = Utils.readObject(f, HashSet.class);
-                } else {
-                    _stagedToRemove = Utils.readObject(f, HashSet.class);
-                }
+            if (_state == null || !_state.isCurrent()) {
+                _state = new StateFile(_repository);
+                ObjectStore.reset();
+                ObjectStore.cache().clear();
+                Legacy.reset();
+                StatCache.reset();
+                CommitGraph.reset();
+                MessageIndex.reset();
+                _allCommits = CommitIndex.read();
+            }
+            for (String v : READS.getOrDefault(command, new String[0])) {
+                readVariable(v);
             }
         }
     }
 
-    /** Writes this state's objects to files for next time. */
+    /** Reads the variable named V from the state file. */
+    @SuppressWarnings("unchecked")
+    private static void readVariable(String v) {
+        if (v.equals("_activePointer")) {
+            _activePointer = _state.read(v, Commit.class);
+        } else if (v.equals("_branches")) {
+            _branches = _state.read(v, HashMap.class);
+        } else if (v.equals("_stagedToAdd")) {
+            _stagedToAdd = _state.read(v, HashSet.class);
+        } else if (v.equals("_currentBranch")) {
+            _currentBranch = _state.read(v, String.class);
+        } else {
+            _stagedToRemove = _state.read(v, HashSet.class);
+        }
+    }
+
+    /** Returns the value of the variable named V. */
+    private static Serializable variable(String v) {
+        if (v.equals("_activePointer")) {
+            return _activePointer;
+        } else if (v.equals("_branches")) {
+            return _branches;
+        } else if (v.equals("_stagedToAdd")) {
+            return _stagedToAdd;
+        } else if (v.equals("_currentBranch")) {
+            return _currentBranch;
+        } else {
+            return _stagedToRemove;
+        }
+    }
+
+    /** Writes the variables the current command may change for next
+     *  time, all at once, so that either every change is kept or none
+     *  is. */
     private static void exitPersistence() {
-        File f = Utils.join(_repository, "_activePointer");
-        File g = Utils.join(_repository, "_branches");
-        File h = Utils.join(_repository, "_stagedToRemove");
-        File i = Utils.join(_repository, "_stagedToAdd");
-        File j = Utils.join(_repository, "_currentBranch");
-        File k = Utils.join(_repository, "_abbreviations");
-        File l = Utils.join(_repository, "_allCommits");
-        Utils.writeObject(f, _activePointer);
-        Utils.writeObject(g, _branches);
-        Utils.writeObject(h, _stagedToRemove);
-        Utils.writeObject(i, _stagedToAdd);
-        Utils.writeObject(j, _currentBranch);
-        Utils.writeObject(k, _abbreviations);
-        Utils.writeObject(l, _allCommits);
+        if (_state == null) {
+            _state = new StateFile(_repository);
+        }
+        HashMap<String, Serializable> sections =
+            new HashMap<String, Serializable>();
+        for (String v : WRITES.getOrDefault(_command, VARIABLES)) {
+            if (variable(v) != null) {
+                sections.put(v, variable(v));
+            }
+        }
+        _state.write(sections);
     }
 
     /** Initializes the repository, and returns whether it already existed. */
@@ -125,16 +266,30 @@ public class Main {
     /** Checks lengths of ARGS. */
     private static void checkLengths(String[] args) {
         String cm = args[0];
-        if (cm.equals("init") || cm.equals("log")
-                || cm.equals("global-log") || cm.equals("status")) {
+        if (cm.equals("init") || cm.equals("log") || cm.equals("status")
+                || cm.equals("repack") || cm.equals("migrate")
+                || cm.equals("gc")) {
             checkOperandFormat(args, 0);
-        } else if (cm.equals("add") || cm.equals("commit")
+        } else if (cm.equals("global-log")) {
+            if (args.length > 2
+                    || args.length == 2 && !args[1].equals("--date")) {
+                exit("Incorrect operands.");
+            }
+        } else if (cm.equals("add")) {
+            if (args.length < 2) {
+                exit("Incorrect operands.");
+            }
+        } else if (cm.equals("commit")
                 || cm.equals("rm") || cm.equals("find")
                 || cm.equals("branch") || cm.equals("rm-branch")
                 || cm.equals("reset") || cm.equals("merge")) {
             checkOperandFormat(args, 1);
-        } else if (cm.equals("checkout")) {
+        } else if (cm.equals("checkout") || cm.equals("diff")) {
             return;
+        } else if (cm.equals("search")) {
+            if (args.length < 2) {
+                exit("Incorrect operands.");
+            }
         } else {
             exit("No command with that name exists.");
         }
@@ -158,12 +313,15 @@ public class Main {
         String command = args[0];
         checkLengths(args);
         checkifInitialized(args);
+        if (Legacy.present() && !allowedBeforeMigrate(args)) {
+            exit("This repository must be migrated first.");
+        }
         switch (command) {
         case "init":
             initializeRepository();
             break;
         case "add":
-            stageFiles(args[1]);
+            stageFiles(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "commit":
             makeCommit(args[1]);
@@ -175,7 +333,7 @@ public class Main {
             retrieveLog();
             break;
         case "global-log":
-            retreiveGlobalLog();
+            retreiveGlobalLog(args.length == 2);
             break;
         case "find":
             findCommits(args[1]);
@@ -194,6 +352,28 @@ public class Main {
         }
     }
 
+    /** Returns true iff ARGS is a command that may be run in a repository
+     *  not yet migrated from the first version of gitlet: one that writes
+     *  nothing to the repository, or migrate itself. */
+    private static boolean allowedBeforeMigrate(String[] args) {
+        switch (args[0]) {
+        case "init":
+        case "log":
+        case "global-log":
+        case "find":
+        case "status":
+        case "diff":
+        case "search":
+        case "migrate":
+            return true;
+        case "checkout":
+            return args.length > 2
+                && (args[1].equals("--") || args[2].equals("--"));
+        default:
+            return false;
+        }
+    }
+
     /** Helps ARGS pass style check. */
     private static void processCommandContinued(String[] args) {
         switch (args[0]) {
@@ -209,6 +389,21 @@ public class Main {
         case "merge":
             mergeBranch(args[1]);
             break;
+        case "repack":
+            ObjectStore.repack(_allCommits.ids());
+            break;
+        case "migrate":
+            migrate();
+            break;
+        case "gc":
+            collectGarbage();
+            break;
+        case "diff":
+            showDiff(Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "search":
+            searchCommits(Arrays.copyOfRange(args, 1, args.length));
+            break;
         default:
             exit("No command with that name exists.");
         }
@@ -228,8 +423,19 @@ public class Main {
     private static void clearStage() {
         _stagedToAdd.clear();
         _stagedToRemove.clear();
-        File[] files = _stage.listFiles();
+        clearDirectory(_stage);
+    }
+
+    /** Deletes everything inside DIR. */
+    private static void clearDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
         for (File f : files) {
+            if (f.isDirectory()) {
+                clearDirectory(f);
+            }
             f.delete();
         }
     }
@@ -237,90 +443,113 @@ public class Main {
     /** Initializes the repo (init). */
     public static void initializeRepository() {
         _stagedToRemove = new HashSet<String>();
-        _allCommits = new HashSet<String>();
         _stagedToAdd = new HashSet<String>();
         _branches = new HashMap<String, Commit>();
-        _abbreviations = new HashMap<String, String>();
         if (setUpPersistence()) {
             exit("A Gitlet version-control"
                     + " system already exists in the current directory.");
         }
+        _allCommits = CommitIndex.read();
         HashSet<File> emptyList = new HashSet<File>();
         _activePointer = new Commit("initial commit",
                 null, null, emptyList, emptyList, "master", true);
         _branches.put("master", _activePointer);
         _currentBranch = "master";
-        _allCommits.add(_activePointer.getCommitID());
-        String id = _activePointer.getCommitID();
-        for (int x = 1; x <= id.length(); x++) {
-            _abbreviations.put(id.substring(0, x), id);
-        }
-        File f = Utils.join(_repository, "_activePointer");
-        File g = Utils.join(_repository, "_branches");
-        File h = Utils.join(_repository, "_stagedToRemove");
-        File i = Utils.join(_repository, "_stagedToAdd");
-        File j = Utils.join(_repository, "_currentBranch");
-        File k = Utils.join(_repository, "_abbreviations");
-        File l = Utils.join(_repository, "_allCommits");
-        try {
-            f.createNewFile();
-            g.createNewFile();
-            h.createNewFile();
-            i.createNewFile();
-            j.createNewFile();
-            k.createNewFile();
-            l.createNewFile();
-        } catch (IOException e) {
-            exit(e.getMessage());
-        }
+        recordCommit(_activePointer);
         exitPersistence();
     }
 
-    /** Stages FILENAME to be commited (add). */
-    public static void stageFiles(String fileName) {
-        File repo = new File(fileName);
-        File stagedCopy = Utils.join(_stage, fileName);
-        if (!new File(fileName).exists()
-                && !_activePointer.getBlobs().containsKey(fileName)) {
-            exit("File does not exist.");
-        }
-        String compare = "";
-        if (_activePointer.getFile(fileName) != null) {
-            compare = _activePointer.fileAsHash(fileName);
-        }
-        if (_stagedToRemove.contains(fileName)) {
-            _stagedToRemove.remove(fileName);
-            File f = new File(fileName);
-            try {
-                f.createNewFile();
-            } catch (IOException e) {
-                exit(e.getMessage());
+    /** Stages the files named by PATHS to be commited (add).  Each
+     *  path may name a file, a directory (meaning every file under it),
+     *  or a glob pattern such as "*.txt".  Files are hashed and copied to
+     *  the stage in parallel, and the state is written once at the end. */
+    public static void stageFiles(String... paths) {
+        Map<String, String> tracked = _activePointer.getBlobs();
+        TreeSet<String> names = expandPaths(paths);
+        Map<String, String> hashes = WorkingTree.hashes(names);
+        List<String> toCopy = new ArrayList<String>();
+        for (String fileName : names) {
+            File stagedCopy = Utils.join(_stage, fileName);
+            if (_stagedToRemove.contains(fileName)) {
+                _stagedToRemove.remove(fileName);
+                File f = new File(fileName);
+                Utils.copyContents(stagedCopy, f);
+                stagedCopy.delete();
+                continue;
             }
-            Utils.writeContents(f, Utils.readContents(stagedCopy));
-            stagedCopy.delete();
-        }  else {
-            String currentVersion = Utils.sha1(Utils.readContents(repo));
-            if (!compare.equals("") && currentVersion.equals(compare)) {
+            String currentVersion = hashes.get(fileName);
+            if (currentVersion == null) {
+                continue;
+            }
+            if (currentVersion.equals(tracked.get(fileName))) {
                 if (stagedCopy.exists()) {
                     stagedCopy.delete();
                     _stagedToAdd.remove(fileName);
                 }
             } else {
-                try {
-                    if (!stagedCopy.exists()) {
-                        stagedCopy.createNewFile();
+                toCopy.add(fileName);
+            }
+        }
+        toCopy.parallelStream().forEach(fileName -> {
+            File stagedCopy = Utils.join(_stage, fileName);
+            stagedCopy.getParentFile().mkdirs();
+            Utils.copyContents(new File(fileName), stagedCopy);
+        });
+        _stagedToAdd.addAll(toCopy);
+        exitPersistence();
+    }
+
+    /** Returns the names of the files meant by PATHS, as described for
+     *  stageFiles.  Exits if a path names neither a file nor a tracked
+     *  file. */
+    private static TreeSet<String> expandPaths(String... paths) {
+        TreeSet<String> result = new TreeSet<String>();
+        TreeSet<String> working = null;
+        for (String path : paths) {
+            String name = normalizePath(path);
+            File f = new File(name.isEmpty() ? "." : name);
+            if (GLOB.matcher(name).find()) {
+                if (working == null) {
+                    working = WorkingTree.files();
+                }
+                PathMatcher matcher =
+                    FileSystems.getDefault().getPathMatcher("glob:" + name);
+                for (String w : working) {
+                    if (matcher.matches(Paths.get(w))) {
+                        result.add(w);
                     }
-                } catch (IOException e) {
-                    exit(e.getMessage());
                 }
-                Utils.writeContents(stagedCopy,
-                        Utils.readContents(new File(fileName)));
-                if (!_stagedToAdd.contains(fileName)) {
-                    _stagedToAdd.add(fileName);
+            } else if (f.isDirectory()) {
+                if (working == null) {
+                    working = WorkingTree.files();
+                }
+                String prefix = name.isEmpty() ? "" : name + "/";
+                for (String w : working) {
+                    if (w.startsWith(prefix)) {
+                        result.add(w);
+                    }
                 }
+            } else if (f.isFile()
+                    || _activePointer.getBlobs().containsKey(name)) {
+                result.add(name);
+            } else {
+                exit("File does not exist.");
             }
         }
-        exitPersistence();
+        return result;
+    }
+
+    /** Returns PATH relative to the working directory, with '/' between
+     *  directory names and no leading "./" or trailing '/'. */
+    private static String normalizePath(String path) {
+        String result = path.replace(File.separatorChar, '/');
+        while (result.startsWith("./")) {
+            result = result.substring(2);
+        }
+        while (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result.equals(".") ? "" : result;
     }
 
     /** Makes commit with MESSAGE (commit). */
@@ -331,48 +560,31 @@ public class Main {
         if (message.equals("")) {
             exit("Please enter a commit message.");
         }
-        HashMap<String, String> files = _activePointer.getBlobs();
         HashSet<File> newFiles = new HashSet<File>();
         HashSet<File> filesToRemove = new HashSet<File>();
-        for (String key : files.keySet()) {
-            File stage = Utils.join(_stage, key);
-            if (_stagedToAdd.contains(key)) {
-                File f = new File(key);
-                newFiles.add(stage);
-            } else if (_stagedToRemove.contains(key)) {
-                filesToRemove.add(new File(key));
-            }
-        }
         for (String key : _stagedToAdd) {
-            if (!newFiles.contains(key)) {
-                File shorterName = new File(key);
-                try {
-                    shorterName.createNewFile();
-                } catch (IOException e) {
-                    exit(e.getMessage());
-                }
-                Utils.writeContents(shorterName,
-                        Utils.readContentsAsString(Utils.join(_stage, key)));
-                newFiles.add(shorterName);
-            }
+            newFiles.add(Utils.join(_stage, key));
         }
-        Commit c = new Commit(message, _activePointer, _merger,
-                newFiles, filesToRemove, _currentBranch, true);
-        String id = c.getCommitID();
-        for (int x = 1; x <= id.length(); x++) {
-            String toPut = id.substring(0, x);
-            if (!_abbreviations.containsKey(toPut)) {
-                _abbreviations.put(toPut, id);
-            }
+        for (String key : _stagedToRemove) {
+            filesToRemove.add(new File(key));
         }
+        Commit c = new Commit(message, _activePointer, null,
+                newFiles, filesToRemove, _currentBranch, true);
         _branches.replace(_currentBranch, c);
         _activePointer = c;
-        _merger = null;
-        _allCommits.add(c.getCommitID());
+        recordCommit(c);
         clearStage();
         exitPersistence();
     }
 
+    /** Adds the new commit C to the commit index, the commit graph and
+     *  the message index. */
+    private static void recordCommit(Commit c) {
+        MessageIndex.get().add(c.getCommitID(), c.getMessage());
+        _allCommits.add(c.getCommitID());
+        CommitGraph.get().add(c);
+    }
+
     /** Unstage file TOREMOVE that has been added (rm). */
     public static void unstageFiles(String toRemove) {
         if (!_stagedToAdd.contains(toRemove)
@@ -387,12 +599,8 @@ public class Main {
             File f = new File(toRemove);
             _stagedToRemove.add(toRemove);
             if (f.exists()) {
-                try {
-                    stagedCopy.createNewFile();
-                } catch (IOException e) {
-                    exit(e.getMessage());
-                }
-                Utils.writeContents(stagedCopy, Utils.readContentsAsString(f));
+                stagedCopy.getParentFile().mkdirs();
+                Utils.copyContents(f, stagedCopy);
                 f.delete();
             }
         }
@@ -401,60 +609,113 @@ public class Main {
 
     /** Gets the commit log for one single branch (log). */
     public static void retrieveLog() {
-        Commit pointer = _activePointer;
-        while (pointer != null) {
-            System.out.println("===");
-            System.out.println("commit " + pointer.getCommitID());
-            if (pointer.hasMergeParent()) {
-                System.out.println(pointer.bothParents());
-            }
-            System.out.println("Date: " + pointer.getTimeStamp());
-            System.out.println(pointer.getMessage());
-            System.out.println();
-            if (pointer.getParent() == null) {
-                break;
-            } else {
-                pointer = pointer.getParent();
+        OutputStream out = new BufferedOutputStream(System.out,
+                                                    Utils.BUFFER_SIZE);
+        try {
+            for (Commit p = _activePointer; p != null; p = p.getParent()) {
+                out.write(logEntry(p));
             }
+            out.flush();
+        } catch (IOException e) {
+            exit(e.getMessage());
         }
     }
 
-    /** Gets all commits ever made with optionl QUERY (global-log & find). */
-    public static void retreiveGlobalLog() {
-        for (String s : _allCommits) {
-            Commit pointer = Utils.readObject(
-                    Utils.join(_objects, s), Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + pointer.getCommitID());
-            if (pointer.hasMergeParent()) {
-                System.out.println(pointer.bothParents());
+    /** Gets all commits ever made (global-log), in the order of the commit
+     *  index or, if BYDATE, newest first.  Commits are read and formatted
+     *  in parallel, LOG_CHUNK at a time, and written in order through one
+     *  buffered stream. */
+    public static void retreiveGlobalLog(boolean byDate) {
+        String[] ids = _allCommits.ids().toArray(new String[0]);
+        if (byDate) {
+            long[] dates = new long[ids.length];
+            Arrays.parallelSetAll(dates, i -> ObjectStore.readCommit(ids[i])
+                                  .getDateInstance().getTime());
+            Integer[] order = new Integer[ids.length];
+            Arrays.setAll(order, i -> i);
+            Arrays.parallelSort(order, (i, j) -> dates[i] != dates[j]
+                                ? Long.compare(dates[j], dates[i])
+                                : ids[i].compareTo(ids[j]));
+            String[] sorted = new String[ids.length];
+            Arrays.setAll(sorted, i -> ids[order[i]]);
+            System.arraycopy(sorted, 0, ids, 0, ids.length);
+        }
+        OutputStream out = new BufferedOutputStream(System.out,
+                                                    Utils.BUFFER_SIZE);
+        try {
+            byte[][] entries = new byte[LOG_CHUNK][];
+            for (int start = 0; start < ids.length; start += LOG_CHUNK) {
+                int from = start, n = Math.min(LOG_CHUNK, ids.length - from);
+                IntStream.range(0, n).parallel().forEach(i -> entries[i] =
+                    logEntry(ObjectStore.readCommit(ids[from + i])));
+                for (int i = 0; i < n; i += 1) {
+                    out.write(entries[i]);
+                }
             }
-            System.out.println("Date: " + pointer.getTimeStamp());
-            System.out.println(pointer.getMessage());
-            System.out.println();
+            out.flush();
+        } catch (IOException e) {
+            exit(e.getMessage());
+        }
+    }
+
+    /** Returns the log entry for commit C, as UTF-8. */
+    private static byte[] logEntry(Commit c) {
+        String nl = System.lineSeparator();
+        StringBuilder entry = new StringBuilder();
+        entry.append("===").append(nl);
+        entry.append("commit ").append(c.getCommitID()).append(nl);
+        if (c.hasMergeParent()) {
+            entry.append(c.bothParents()).append(nl);
         }
+        entry.append("Date: ").append(c.getTimeStamp()).append(nl);
+        entry.append(c.getMessage()).append(nl).append(nl);
+        return entry.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     /** Retreives the commits with a given MESSAGE (find). */
     public static void findCommits(String message) {
-        boolean found = false;
-        for (String s : _allCommits) {
-            Commit pointer = Utils.readObject(
-                    Utils.join(_objects, s), Commit.class);
-            if (pointer.getMessage().equals(message)) {
-                found = true;
-                System.out.println(pointer.getCommitID());
+        TreeSet<String> found = MessageIndex.get().withMessage(message);
+        if (found.isEmpty()) {
+            exit("Found no commit with that message.");
+        }
+        for (String id : found) {
+            System.out.println(id);
+        }
+    }
+
+    /** Prints the ID and message of each commit whose message has all of
+     *  the words in TERMS, in any case (search).  A term ending in '*'
+     *  matches any word starting with the rest of it. */
+    public static void searchCommits(String[] terms) {
+        MessageIndex index = MessageIndex.get();
+        TreeSet<String> found = null;
+        for (String term : terms) {
+            for (String word : MessageIndex.words(term)) {
+                TreeSet<String> ids;
+                if (term.toLowerCase(Locale.ROOT).endsWith(word + "*")) {
+                    ids = index.withPrefix(word);
+                } else {
+                    ids = index.withWord(word);
+                }
+                if (found == null) {
+                    found = ids;
+                } else {
+                    found.retainAll(ids);
+                }
             }
         }
-        if (!found) {
+        if (found == null || found.isEmpty()) {
             exit("Found no commit with that message.");
         }
+        for (String id : found) {
+            System.out.println(id + " "
+                               + ObjectStore.readCommit(id).getMessage());
+        }
     }
 
-    /** Exits program with MSG. */
+    /** Ends the current command with MSG, which main prints. */
     public static void exit(String msg) {
-        System.out.println(msg);
-        System.exit(0);
+        throw Utils.error(msg);
     }
 
     /** Returns and Sorts a hash map. */
@@ -494,17 +755,168 @@ public class Main {
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
+        TreeSet<String> working = WorkingTree.files();
+        Map<String, String> tracked = _activePointer.getBlobs();
+        TreeSet<String> toHash = new TreeSet<String>();
+        for (String name : working) {
+            if (tracked.containsKey(name) || _stagedToAdd.contains(name)) {
+                toHash.add(name);
+            }
+        }
+        for (String name : _stagedToAdd) {
+            toHash.add(Utils.join(_stage, name).getPath());
+        }
+        Map<String, String> hashes = WorkingTree.hashes(toHash);
+        TreeSet<String> all = new TreeSet<String>(tracked.keySet());
+        all.addAll(_stagedToAdd);
+        for (String name : all) {
+            String current = hashes.get(name);
+            String expected;
+            if (_stagedToAdd.contains(name)) {
+                expected = hashes.get(Utils.join(_stage, name).getPath());
+            } else if (!_stagedToRemove.contains(name)) {
+                expected = tracked.get(name);
+            } else {
+                continue;
+            }
+            if (current == null) {
+                System.out.println(name + " (deleted)");
+            } else if (!current.equals(expected)) {
+                System.out.println(name + " (modified)");
+            }
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
+        for (String name : working) {
+            if (!_stagedToAdd.contains(name)
+                    && (!tracked.containsKey(name)
+                        || _stagedToRemove.contains(name))) {
+                System.out.println(name);
+            }
+        }
+        System.out.println();
+    }
+
+    /** Shows the differences between two versions of the files as unified
+     *  diffs (diff).  ARGS are up to two commits or branches, optionally
+     *  followed by "--" and the paths to compare.  With no commits, the
+     *  working files are compared with the stage (or the head, for files
+     *  not staged); with one, the working files are compared with it;
+     *  with two, the commits are compared, skipping the directories whose
+     *  trees they share.  Files whose blob IDs are the same on both sides
+     *  are not read. */
+    public static void showDiff(String[] args) {
+        int dashes = Arrays.asList(args).indexOf("--");
+        String[] revs = dashes < 0 ? args : Arrays.copyOf(args, dashes);
+        if (revs.length > 2) {
+            exit("Incorrect operands.");
+        }
+        HashMap<String, File> sources = new HashMap<String, File>();
+        Map<String, String> from, to;
+        TreeSet<String> names;
+        if (revs.length == 2) {
+            Commit a = revision(revs[0]), b = revision(revs[1]);
+            names = Tree.changed(a.getTreeID(), b.getTreeID());
+            from = new HashMap<String, String>();
+            to = new HashMap<String, String>();
+            for (String name : names) {
+                from.put(name, a.fileAsHash(name));
+                to.put(name, b.fileAsHash(name));
+            }
+        } else {
+            FileMap index = stagedBlobs(sources);
+            from = revs.length == 0 ? index : revision(revs[0]).getBlobs();
+            names = new TreeSet<String>(index.keySet());
+            names.addAll(from.keySet());
+            to = WorkingTree.hashes(names);
+            for (Map.Entry<String, String> e : to.entrySet()) {
+                sources.put(e.getValue(), new File(e.getKey()));
+            }
+            names = new TreeSet<String>(from.keySet());
+            names.addAll(to.keySet());
+        }
+        if (dashes >= 0) {
+            TreeSet<String> chosen = new TreeSet<String>();
+            for (int i = dashes + 1; i < args.length; i += 1) {
+                String path = normalizePath(args[i]);
+                for (String name : names) {
+                    if (path.isEmpty() || name.equals(path)
+                            || name.startsWith(path + "/")) {
+                        chosen.add(name);
+                    }
+                }
+            }
+            names = chosen;
+        }
+        OutputStream out = new BufferedOutputStream(System.out,
+                                                    Utils.BUFFER_SIZE);
+        try {
+            for (String name : names) {
+                String a = from.get(name), b = to.get(name);
+                if (a == null ? b != null : !a.equals(b)) {
+                    Diff.unified(out, name, contents(a, sources),
+                                 contents(b, sources), DIFF_CONTEXT);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            exit(e.getMessage());
+        }
+    }
+
+    /** Returns the file map of the head with the stage applied: staged
+     *  files with the hashes of their staged copies, and files staged for
+     *  removal left out.  Records the staged copy of each staged blob in
+     *  SOURCES. */
+    private static FileMap stagedBlobs(HashMap<String, File> sources) {
+        HashMap<String, String> changes = new HashMap<String, String>();
+        for (String name : _stagedToRemove) {
+            changes.put(name, null);
+        }
+        for (String name : _stagedToAdd) {
+            File copy = Utils.join(_stage, name);
+            String hash = StatCache.get().hash(copy);
+            changes.put(name, hash);
+            sources.put(hash, copy);
+        }
+        return _activePointer.getBlobs().withChanges(changes);
+    }
+
+    /** Returns the commit named by the branch or commit ID NAME. */
+    private static Commit revision(String name) {
+        if (_branches.containsKey(name)) {
+            return _branches.get(name);
+        }
+        String id = abbreviatedOrNot(name, "No commit with that id exists.");
+        return ObjectStore.readCommit(id);
+    }
+
+    /** Returns the contents of the blob ID, read from its file in SOURCES
+     *  if it has one, or null if ID is null. */
+    private static byte[] contents(String id, HashMap<String, File> sources) {
+        if (id == null) {
+            return null;
+        }
+        File f = sources.get(id);
+        if (f != null) {
+            return Utils.readContents(f);
+        }
+        return ObjectStore.readBytes(id);
     }
 
     /** Returns S's full commit ID, or throws ERRORMESSAGE if the commit doesn't
      * exist. */
     private static String abbreviatedOrNot(String s, String errorMessage) {
-        if (!_abbreviations.containsKey(s)) {
+        String id = null;
+        try {
+            id = _allCommits.resolve(s);
+        } catch (GitletException e) {
+            exit(e.getMessage());
+        }
+        if (id == null) {
             exit(errorMessage);
         }
-        return _abbreviations.get(s);
+        return id;
     }
 
     /** Checks out files of ARGS from a previous commit (checkout). */
@@ -516,7 +928,8 @@ public class Main {
                         + "does not exist in that commit.");
             }
             File workingVersion = new File(args[2]);
-            Utils.writeContents(workingVersion, f.getString());
+            f.writeTo(workingVersion);
+            StatCache.get().record(workingVersion, f.getHash());
         } else if (args.length == 2) {
             checkoutBranch(args[1]);
         } else if (args[2].equals("--")) {
@@ -526,15 +939,15 @@ public class Main {
                 if (!_allCommits.contains(id)) {
                     exit("No commit with that id exists.");
                 }
-                Commit c = Utils.readObject(Utils.join(
-                        _objects, id), Commit.class);
+                Commit c = ObjectStore.readCommit(id);
                 Blob f = c.getFile(args[3]);
                 if (f == null) {
                     exit(
                             "File does not exist in that commit.");
                 }
                 File workingVersion = new File(args[3]);
-                Utils.writeContents(workingVersion, f.getString());
+                f.writeTo(workingVersion);
+                StatCache.get().record(workingVersion, f.getHash());
             } catch (NullPointerException e) {
                 exit("No commit with that id exists.");
             }
@@ -577,40 +990,125 @@ public class Main {
         exitPersistence();
     }
 
+    /** Rewrites the commits and trees stored by older versions of gitlet
+     *  in the current form, along with the saved state, and then removes
+     *  the files kept only by those versions (migrate).  The commits of
+     *  the first version, and the head and branches that refer to them,
+     *  are converted in memory as they are read, and stored here. */
+    public static void migrate() {
+        int count = ObjectStore.migrate(_allCommits.ids());
+        if (Legacy.present()) {
+            _allCommits = _allCommits.save();
+        }
+        exitPersistence();
+        _state.checkpoint();
+        CommitIndex.removeLegacy();
+        MessageIndex.reset();
+        System.out.println("Migrated " + count + " objects.");
+    }
+
+    /** Removes the objects that no branch can reach and the copies in the
+     *  stage of files no longer staged, and reports the bytes freed (gc).
+     *  Commits removed are dropped from the commit index, and the commit
+     *  graph and message index are rebuilt without them when next
+     *  needed. */
+    public static void collectGarbage() {
+        HashSet<String> heads = new HashSet<String>();
+        heads.add(_activePointer.getCommitID());
+        for (Commit c : _branches.values()) {
+            heads.add(c.getCommitID());
+        }
+        Collector collector = new Collector(Collector.grace());
+        collector.mark(heads, _allCommits.ids());
+        long reclaimed = collector.sweep();
+        Set<String> live = collector.commits();
+        if (live.size() < _allCommits.size()) {
+            _allCommits.retainAll(live);
+            Utils.join(_repository, "_commitGraph").delete();
+            Utils.join(_repository, "_messageIndex").delete();
+            CommitGraph.reset();
+            MessageIndex.reset();
+        }
+        ObjectStore.cache().clear();
+        long staged = Collector.size(_stage);
+        int pruned = pruneStage(_stage, "");
+        reclaimed += staged - Collector.size(_stage);
+        System.out.println(String.format(
+            "Removed %d objects and %d stage files, reclaiming %d bytes.",
+            collector.removed(), pruned, reclaimed));
+    }
+
+    /** Deletes the files under DIR, a directory of the stage whose files'
+     *  names start with PREFIX, that are no longer staged, along with the
+     *  directories this leaves empty.  Returns the number deleted. */
+    private static int pruneStage(File dir, String prefix) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File f : files) {
+            String name = prefix + f.getName();
+            if (f.isDirectory()) {
+                count += pruneStage(f, name + "/");
+                String[] left = f.list();
+                if (left != null && left.length == 0) {
+                    f.delete();
+                }
+            } else if (!_stagedToAdd.contains(name)
+                    && !_stagedToRemove.contains(name) && f.delete()) {
+                StatCache.get().forget(f);
+                count += 1;
+            }
+        }
+        return count;
+    }
+
     /** Checks out all files from a given commit with COMMITID(reset).
-     *  Updates CHANGEBRANCHHEAD if told to. */
+     *  Updates CHANGEBRANCHHEAD if told to.  Only the files whose blob IDs
+     *  differ between the two commits are deleted or written, apart from
+     *  tracked files changed in the working directory, which the stat
+     *  cache finds without reading the rest; files are written in
+     *  parallel. */
     public static void reset(String commitID, boolean changeBranchHead) {
         String id = abbreviatedOrNot(
                 commitID, "No commit with that ID exists.");
         if (!_allCommits.contains(id)) {
             exit("No commit with that ID exists.");
         }
-        Commit c = Utils.readObject(
-                Utils.join(_objects, id), Commit.class);
-        for (String s : c.getBlobs().keySet()) {
-            File f = new File(s);
-            if (_activePointer.getFile(s) == null && f.exists())  {
+        Commit c = ObjectStore.readCommit(id);
+        FileMap current = _activePointer.getBlobs(), target = c.getBlobs();
+        TreeSet<String> changed =
+            Tree.changed(_activePointer.getTreeID(), c.getTreeID());
+        for (String s : changed) {
+            if (!current.containsKey(s) && new File(s).exists()) {
                 exit("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
             }
         }
-        for (String s : _activePointer.getBlobs().keySet()) {
+        TreeMap<String, String> toWrite = new TreeMap<String, String>();
+        List<String> unchanged = new ArrayList<String>();
+        for (Map.Entry<String, String> e : target.entrySet()) {
+            if (changed.contains(e.getKey())) {
+                toWrite.put(e.getKey(), e.getValue());
+            } else {
+                unchanged.add(e.getKey());
+            }
+        }
+        for (String s : changed) {
             File f = new File(s);
-            if (f.exists() && !c.getBlobs().keySet().contains(s)) {
+            if (!target.containsKey(s) && f.exists()) {
                 f.delete();
+                StatCache.get().forget(f);
             }
         }
-        for (String s : c.getBlobs().keySet()) {
-            File old = new File(s);
-            if (!old.exists()) {
-                try {
-                    old.createNewFile();
-                } catch (IOException e) {
-                    exit(e.getMessage());
-                }
+        Map<String, String> hashes = WorkingTree.hashes(unchanged);
+        for (String s : unchanged) {
+            if (!target.get(s).equals(hashes.get(s))) {
+                toWrite.put(s, target.get(s));
             }
-            Utils.writeContents(old, c.getFile(s).getString());
         }
+        writeBlobs(toWrite);
         _activePointer = c;
         if (changeBranchHead) {
             _branches.replace(_currentBranch, c);
@@ -619,6 +1117,17 @@ public class Main {
         exitPersistence();
     }
 
+    /** Writes the blobs named in FILES, keyed by path, to the working
+     *  directory in parallel, recording their hashes in the stat cache. */
+    private static void writeBlobs(Map<String, String> files) {
+        StatCache cache = StatCache.get();
+        files.entrySet().parallelStream().forEach(e -> {
+            File f = new File(e.getKey());
+            ObjectStore.readBlob(e.getValue()).writeTo(f);
+            cache.record(f, e.getValue());
+        });
+    }
+
     /** Merges two BRANCHNAME with the current branch together (merge). */
     public static void mergeBranch(String branchName) {
         if (!_stagedToAdd.isEmpty() || !_stagedToRemove.isEmpty()) {
@@ -644,114 +1153,102 @@ public class Main {
             checkoutBranch(branchName);
             exit("Current branch fast-forwarded.");
         }
-        _merger = mergeBranch;
-        Set<String> currentFiles =
-                currentBranch.getBlobs().keySet();
-        Set<String> mergeFiles =
-                mergeBranch.getBlobs().keySet();
-        Set<String> splitFiles = splitPoint.getBlobs().keySet();
-        for (String s : mergeFiles) {
-            File f = new File(s);
-            if (f.exists() && !_activePointer.getBlobs().containsKey(s)) {
+        Merge merge = new Merge(splitPoint.getBlobs(),
+                currentBranch.getBlobs(), mergeBranch.getBlobs());
+        Map<String, String> tracked = currentBranch.getBlobs();
+        TreeSet<String> touched = new TreeSet<String>(merge.conflicts());
+        touched.addAll(merge.taken().keySet());
+        touched.addAll(merge.removed());
+        for (String s : touched) {
+            if (!tracked.containsKey(s) && new File(s).exists()) {
                 exit("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
             }
         }
-        boolean b = stageMerge(currentBranch, mergeBranch, splitPoint,
-                currentFiles, mergeFiles, splitFiles);
-        makeCommit("Merged " + branchName + " into " + _currentBranch + ".");
-        if (b) {
-            System.out.println("Encountered a merge conflict.");
+        HashMap<String, String> blobs = merge.result();
+        StatCache cache = StatCache.get();
+        writeBlobs(merge.taken());
+        for (String s : merge.removed()) {
+            File f = new File(s);
+            f.delete();
+            cache.forget(f);
         }
+        boolean conflicted = false;
+        for (String s : merge.conflicts()) {
+            File f = new File(s);
+            conflicted |= writeMerged(f, splitPoint.getFile(s),
+                    currentBranch.getFile(s), mergeBranch.getFile(s));
+            Blob b = new Blob(f);
+            b.store();
+            blobs.put(s, b.getHash());
+            cache.record(f, b.getHash());
+        }
+        Commit c = new Commit("Merged " + branchName + " into "
+                + _currentBranch + ".", currentBranch, mergeBranch,
+                blobs, _currentBranch);
+        _branches.replace(_currentBranch, c);
+        _activePointer = c;
+        recordCommit(c);
+        clearStage();
         exitPersistence();
+        if (conflicted) {
+            System.out.println("Encountered a merge conflict.");
+        }
     }
 
-    /** Stages the correct files from CURRENT, TOMERGE, and SPLIT.
-     *  Blobs represented by CURRENTFILES, MERGEFILES, and SPLITFILES.
-     *  Returns true iff conflict encountered. */
-    private static boolean stageMerge(
-            Commit current, Commit toMerge, Commit split,
-            Set<String> currentFiles, Set<String> mergeFiles,
-            Set<String> splitFiles) {
-        boolean encounteredConflict = false;
-        Blob currentVersion, branchVersion, splitVersion;
-        for (String file : splitFiles) {
-            splitVersion = split.getFile(file);
-            if (currentFiles.contains(file) && mergeFiles.contains(file)) {
-                currentVersion = current.getFile(file);
-                branchVersion = toMerge.getFile(file);
-                if (currentVersion.isSameVersion(branchVersion)
-                        && !currentVersion.isSameVersion(splitVersion)) {
-                    checkoutFiles(new String[] {"checkout",
-                            toMerge.getCommitID(), "--", file});
-                    stageFiles(file);
-                } else if (!currentVersion.isSameVersion(splitVersion)
-                        && !branchVersion.isSameVersion(splitVersion)
-                        && !branchVersion.isSameVersion(currentVersion)) {
-                    processConflict(file, currentVersion, branchVersion);
-                    encounteredConflict = true;
-                }
-            } else if (!currentFiles.contains(file)
-                    && mergeFiles.contains(file)) {
-                branchVersion = toMerge.getFile(file);
-                if (!branchVersion.isSameVersion(splitVersion)) {
-                    processConflict(file, null, branchVersion);
-                    encounteredConflict = true;
-                }
-            } else if (!mergeFiles.contains(file)
-                    && currentFiles.contains(file)) {
-                currentVersion = current.getFile(file);
-                if (currentVersion.isSameVersion(splitVersion)) {
-                    unstageFiles(file);
-                } else {
-                    processConflict(file, currentVersion, null);
-                    encounteredConflict = true;
-                }
-            }
+    /** Writes the line-by-line merge of CURRENT and MERGE against SPLIT
+     *  to F, and returns true iff it has conflicts.  A null version is a
+     *  removed (or, for SPLIT, not yet added) file; if CURRENT or MERGE
+     *  is removed, the whole file conflicts. */
+    private static boolean writeMerged(File f, Blob split, Blob current,
+                                       Blob merge) {
+        if (current == null || merge == null) {
+            writeConflict(f, current, merge);
+            return true;
         }
-        for (String file : currentFiles) {
-            currentVersion = current.getFile(file);
-            if (!splitFiles.contains(file) && mergeFiles.contains(file)) {
-                branchVersion = toMerge.getFile(file);
-                if (!currentVersion.isSameVersion(branchVersion)) {
-                    processConflict(file, currentVersion, branchVersion);
-                    encounteredConflict = true;
-                }
-            }
+        File dir = f.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
         }
-        for (String file : mergeFiles) {
-            if (!splitFiles.contains(file) && !currentFiles.contains(file)) {
-                checkoutFiles(new String[] {"checkout",
-                        toMerge.getCommitID(), "--", file});
-                stageFiles(file);
-            }
+        try (OutputStream out = new BufferedOutputStream(
+                Utils.newFileOutput(f), Utils.BUFFER_SIZE)) {
+            byte[] base = split == null ? new byte[0] : split.getContents();
+            return Diff3.merge(base, current.getContents(),
+                               merge.getContents(), out) > 0;
+        } catch (IOException e) {
+            exit(e.getMessage());
+            return true;
         }
-        return encounteredConflict;
     }
 
-    /** Processes a FILENAME conflict between CURRENT and MERGE. */
-    private static void processConflict(
-            String fileName, Blob current, Blob merge) {
-        File f = new File(fileName);
-        if (!f.exists()) {
-            try {
-                f.createNewFile();
-            } catch (IOException e) {
-                exit(e.getMessage());
-            }
+    /** Writes the conflict between CURRENT and MERGE, either of which may
+     *  be null for a removed file, to F, streaming each version into
+     *  place. */
+    private static void writeConflict(File f, Blob current, Blob merge) {
+        File dir = f.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
         }
-        String toWrite = "<<<<<<< HEAD\n";
-        if (current != null) {
-            toWrite += current.getString();
-        }
-        toWrite += "=======\n";
-        if (merge != null) {
-            toWrite += merge.getString();
+        try (OutputStream out = new BufferedOutputStream(
+                Utils.newFileOutput(f), Utils.BUFFER_SIZE)) {
+            out.write("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+            if (current != null) {
+                try (InputStream in = current.open()) {
+                    in.transferTo(out);
+                }
+            }
+            out.write("=======\n".getBytes(StandardCharsets.UTF_8));
+            if (merge != null) {
+                try (InputStream in = merge.open()) {
+                    in.transferTo(out);
+                }
+            }
+            out.write(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            exit(e.getMessage());
         }
-        toWrite += ">>>>>>>\n";
-        Utils.writeContents(f, toWrite);
-        stageFiles(fileName);
     }
+
     /** Commits a merge. */
     private static void commitMerge() {
 
@@ -761,67 +1258,7 @@ public class Main {
      *  and BRANCH. */
     private static Commit findSplitPoint(
             Commit current, Commit branch) {
-        HashMap<String, Object[]> commitInfo = new HashMap<String, Object[]>();
-        findCurrentAncestors(current, commitInfo, 0);
-        HashMap<String, Object[]> branchAncestors =
-                new HashMap<String, Object[]>();
-        findCurrentAncestors(branch, branchAncestors, 0);
-        for (String s : commitInfo.keySet()) {
-            if (branchAncestors.containsKey(s)) {
-                commitInfo.get(s)[2] = "red";
-            }
-        }
-        markParents(commitInfo);
-        int minDist = Integer.MAX_VALUE;
-        Commit toReturn = null;
-        for (Object[] o : commitInfo.values()) {
-            if (o[2].equals("red")) {
-                if ((int) o[1] < minDist) {
-                    minDist = (int) o[1];
-                    toReturn = (Commit) o[0];
-                }
-            }
-        }
-        return toReturn;
-    }
-
-    /** Whittles down possible split points for CURRENT. */
-    private static void markParents(HashMap<String, Object[]> current) {
-        for (Object[] o : current.values()) {
-            if (o[2].equals("red")) {
-                Commit c = (Commit) o[0];
-                Commit p = c.getParent();
-                Commit m = c.getMergeParent();
-                if (p != null) {
-                    if (current.containsKey(p.getCommitID())) {
-                        current.get(p.getCommitID())[2] = 1;
-                    }
-                }
-                if (m != null) {
-                    if (current.containsKey(m.getCommitID())) {
-                        current.get(p.getCommitID())[2] = 1;
-                    }
-                }
-            }
-        }
-    }
-
-    /** Finds the common ancestors, updating
-     *  COMMITS, MARK, and DISTANCE. */
-    private static void findCurrentAncestors(
-            Commit mark, HashMap<String,
-            Object[]> commits, int distance) {
-        if (mark != null) {
-            if (!commits.containsKey(mark.getCommitID())
-                    || (int) commits.get(
-                            mark.getCommitID())[1] > distance) {
-                commits.put(mark.getCommitID(),
-                        new Object[]{mark, distance, "blue"});
-                findCurrentAncestors(mark.getParent(),
-                        commits, distance + 1);
-                findCurrentAncestors(mark.getMergeParent(),
-                        commits, distance + 1);
-            }
-        }
+        return ObjectStore.readCommit(CommitGraph.get().mergeBase(
+                current.getCommitID(), branch.getCommitID()));
     }
 }
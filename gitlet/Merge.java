@@ -0,0 +1,109 @@
+package gitlet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A three-way merge of the files of two commits, worked out from blob
+ *  IDs alone.  Each path is classified once by comparing the IDs it has
+ *  at the split point, in the current commit, and in the given commit;
+ *  no file contents are read.  The result is the file map of the merge
+ *  commit, apart from the conflicted paths, together with the changes to
+ *  make to the working directory.
+ *  @author Devun Amoranto
+ */
+class Merge {
+
+    /** What a merge does with one path. */
+    enum Action {
+        /** Keep the current version, or its absence. */
+        KEEP,
+        /** Take the given version. */
+        TAKE,
+        /** Remove the path, which only the given commit removed. */
+        REMOVE,
+        /** The two commits changed the path in different ways. */
+        CONFLICT
+    }
+
+    /** Returns what to do with a path whose blob IDs are SPLIT at the
+     *  split point, CURRENT in the current commit and GIVEN in the given
+     *  one, any of them null where the path is absent. */
+    static Action classify(String split, String current, String given) {
+        if (same(current, given) || same(split, given)) {
+            return Action.KEEP;
+        }
+        if (same(split, current)) {
+            return given == null ? Action.REMOVE : Action.TAKE;
+        }
+        return Action.CONFLICT;
+    }
+
+    /** A merge of the file maps GIVEN into CURRENT, whose split point
+     *  has the file map SPLIT.  Each map takes paths to blob IDs. */
+    Merge(Map<String, String> split, Map<String, String> current,
+          Map<String, String> given) {
+        _result = new HashMap<>(current);
+        TreeSet<String> paths = new TreeSet<>(split.keySet());
+        paths.addAll(given.keySet());
+        for (String path : current.keySet()) {
+            if (split.containsKey(path) || given.containsKey(path)) {
+                paths.add(path);
+            }
+        }
+        for (String path : paths) {
+            String g = given.get(path);
+            switch (classify(split.get(path), current.get(path), g)) {
+            case TAKE:
+                _result.put(path, g);
+                _taken.put(path, g);
+                break;
+            case REMOVE:
+                _result.remove(path);
+                _removed.add(path);
+                break;
+            case CONFLICT:
+                _result.remove(path);
+                _conflicts.add(path);
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /** Returns the file map of the merged commit, apart from the
+     *  conflicted paths, which are left out. */
+    HashMap<String, String> result() {
+        return _result;
+    }
+
+    /** Returns the paths that take the given version, with its ID. */
+    TreeMap<String, String> taken() {
+        return _taken;
+    }
+
+    /** Returns the paths the merge removes. */
+    TreeSet<String> removed() {
+        return _removed;
+    }
+
+    /** Returns the conflicted paths. */
+    TreeSet<String> conflicts() {
+        return _conflicts;
+    }
+
+    /** Returns true iff A and B are the same ID or both null. */
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** The merged file map. */
+    private final HashMap<String, String> _result;
+    /** Paths taken from the given commit. */
+    private final TreeMap<String, String> _taken = new TreeMap<>();
+    /** Paths removed. */
+    private final TreeSet<String> _removed = new TreeSet<>();
+    /** Conflicted paths. */
+    private final TreeSet<String> _conflicts = new TreeSet<>();
+}
@@ -0,0 +1,56 @@
+package gitlet;
+import org.junit.Test;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+import static gitlet.Merge.Action.*;
+/** Tests for three-way merge classification.
+ * @author Devun Amoranto*/
+public class MergeTest {
+
+    @Test
+    public void classify() {
+        assertEquals(KEEP, Merge.classify("a", "a", "a"));
+        assertEquals(KEEP, Merge.classify("a", "b", "a"));
+        assertEquals(KEEP, Merge.classify("a", "b", "b"));
+        assertEquals(KEEP, Merge.classify("a", null, null));
+        assertEquals(KEEP, Merge.classify(null, "b", null));
+        assertEquals(TAKE, Merge.classify("a", "a", "b"));
+        assertEquals(TAKE, Merge.classify(null, null, "b"));
+        assertEquals(REMOVE, Merge.classify("a", "a", null));
+        assertEquals(CONFLICT, Merge.classify("a", "b", "c"));
+        assertEquals(CONFLICT, Merge.classify("a", null, "c"));
+        assertEquals(CONFLICT, Merge.classify("a", "b", null));
+        assertEquals(CONFLICT, Merge.classify(null, "b", "c"));
+    }
+
+    @Test
+    public void result() {
+        HashMap<String, String> split = new HashMap<>(),
+            current = new HashMap<>(), given = new HashMap<>();
+        split.put("same.txt", "1");
+        current.put("same.txt", "1");
+        given.put("same.txt", "1");
+        split.put("taken.txt", "1");
+        current.put("taken.txt", "1");
+        given.put("taken.txt", "2");
+        split.put("removed.txt", "1");
+        current.put("removed.txt", "1");
+        split.put("conflict.txt", "1");
+        current.put("conflict.txt", "2");
+        given.put("conflict.txt", "3");
+        current.put("mine.txt", "4");
+        given.put("theirs.txt", "5");
+        Merge merge = new Merge(split, current, given);
+        HashMap<String, String> expected = new HashMap<>();
+        expected.put("same.txt", "1");
+        expected.put("taken.txt", "2");
+        expected.put("mine.txt", "4");
+        expected.put("theirs.txt", "5");
+        assertEquals(expected, merge.result());
+        assertEquals("[removed.txt]", merge.removed().toString());
+        assertEquals("[conflict.txt]", merge.conflicts().toString());
+        assertEquals("{taken.txt=2, theirs.txt=5}",
+                     merge.taken().toString());
+    }
+}
@@ -0,0 +1,381 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/** An inverted index from commit messages to commit IDs, kept in
+ *  .gitlet/_messageIndex.  Each commit is filed under its whole message
+ *  and under each of the words in it, lower-cased.  The file holds a
+ *  header ("GMSG", version, number of sorted records), a table of the
+ *  offsets of the sorted records, the sorted records, and then a short
+ *  unsorted tail of records added since.  A record is a key (length and
+ *  UTF-8 bytes) followed by a 20-byte commit ID.  Lookups binary search
+ *  the sorted records and scan the tail, so they take time logarithmic
+ *  in the number of commits.
+ *  @author Devun Amoranto
+ */
+class MessageIndex {
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Once the unsorted tail has more records than this, the file is
+     *  rewritten with all records sorted. */
+    static final int MAX_TAIL = 1024;
+
+    /** Messages longer than this many bytes are filed under their hash
+     *  rather than their text. */
+    static final int MAX_KEY = 1024;
+
+    /** Header magic number. */
+    private static final byte[] MAGIC = {'G', 'M', 'S', 'G'};
+    /** Length of the file header. */
+    private static final int HEADER = 12;
+    /** Key prefixes for whole messages, hashed messages and words. */
+    private static final char MESSAGE = '=', HASHED = '#', WORD = 'w';
+
+    /** Compares keys as unsigned bytes. */
+    private static final Comparator<byte[]> KEYS = Arrays::compareUnsigned;
+
+    /** The index stored in FILE, which need not exist yet, or kept only
+     *  in memory if FILE is null. */
+    MessageIndex(File file) {
+        _file = file;
+        load();
+    }
+
+    /** Returns the index of this repository, building it from the commit
+     *  index if it does not exist yet.  A repository not yet migrated from
+     *  the first version of gitlet gets an index held only in memory, as
+     *  reading it writes nothing to it. */
+    static MessageIndex get() {
+        if (_index == null) {
+            File file = Legacy.present() ? null
+                : Utils.join(Main.repository(), "_messageIndex");
+            boolean exists = file != null && file.exists();
+            _index = new MessageIndex(file);
+            if (!exists) {
+                List<Record> all = new ArrayList<>();
+                for (String id : CommitIndex.read().ids()) {
+                    all.addAll(records(id,
+                        ObjectStore.readCommit(id).getMessage()));
+                }
+                _index.rewrite(all);
+            }
+        }
+        return _index;
+    }
+
+    /** Forgets the index read so far, so that it is read again when next
+     *  needed. */
+    static void reset() {
+        _index = null;
+    }
+
+    /** Returns the words of MESSAGE, lower-cased. */
+    static List<String> words(String message) {
+        List<String> result = new ArrayList<>();
+        for (String w : message.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                result.add(w);
+            }
+        }
+        return result;
+    }
+
+    /** Files the commit ID, whose message is MESSAGE. */
+    void add(String id, String message) {
+        List<Record> added = records(id, message);
+        if (_file != null && !_file.exists()) {
+            rewrite(added);
+            return;
+        }
+        if (_file != null) {
+            append(added);
+        }
+        _tail.addAll(added);
+        if (_tail.size() > MAX_TAIL) {
+            List<Record> all = new ArrayList<>(_tail);
+            for (int k = 0; k < _sorted; k += 1) {
+                all.add(recordAt(k));
+            }
+            rewrite(all);
+        }
+    }
+
+    /** Appends ADDED to the file. */
+    private void append(List<Record> added) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Record r : added) {
+                r.write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the IDs of the commits whose message is MESSAGE, in
+     *  order. */
+    TreeSet<String> withMessage(String message) {
+        return lookup(messageKey(message), false);
+    }
+
+    /** Returns the IDs of the commits whose messages have the word WORD
+     *  (in any case), in order. */
+    TreeSet<String> withWord(String word) {
+        return lookup(key(WORD, word.toLowerCase(Locale.ROOT)), false);
+    }
+
+    /** Returns the IDs of the commits whose messages have a word starting
+     *  with PREFIX (in any case), in order. */
+    TreeSet<String> withPrefix(String prefix) {
+        return lookup(key(WORD, prefix.toLowerCase(Locale.ROOT)), true);
+    }
+
+    /** Returns the IDs filed under KEY, or under any key starting with KEY
+     *  if PREFIX. */
+    private TreeSet<String> lookup(byte[] key, boolean prefix) {
+        TreeSet<String> result = new TreeSet<>();
+        int lo = 0, hi = _sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (KEYS.compare(keyAt(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < _sorted; k += 1) {
+            if (!matches(keyAt(k), key, prefix)) {
+                break;
+            }
+            result.add(idAt(k));
+        }
+        for (Record r : _tail) {
+            if (matches(r._key, key, prefix)) {
+                result.add(r._id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff CANDIDATE is KEY, or starts with it if PREFIX. */
+    private static boolean matches(byte[] candidate, byte[] key,
+                                   boolean prefix) {
+        if (prefix) {
+            return candidate.length >= key.length
+                && Arrays.equals(candidate, 0, key.length, key, 0,
+                                 key.length);
+        }
+        return Arrays.equals(candidate, key);
+    }
+
+    /** Returns the records filing commit ID, whose message is MESSAGE. */
+    private static List<Record> records(String id, String message) {
+        List<Record> result = new ArrayList<>();
+        result.add(new Record(messageKey(message), id));
+        for (String w : new TreeSet<>(words(message))) {
+            byte[] key = key(WORD, w);
+            if (key.length <= MAX_KEY) {
+                result.add(new Record(key, id));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the key for the whole MESSAGE. */
+    private static byte[] messageKey(String message) {
+        byte[] key = key(MESSAGE, message);
+        if (key.length > MAX_KEY) {
+            key = key(HASHED, Utils.sha1(message));
+        }
+        return key;
+    }
+
+    /** Returns the key made of KIND followed by TEXT. */
+    private static byte[] key(char kind, String text) {
+        return (kind + text).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the offset in the file of the Kth sorted record. */
+    private int offset(int k) {
+        return _map.getInt(HEADER + k * Integer.BYTES);
+    }
+
+    /** Returns the key of the Kth sorted record. */
+    private byte[] keyAt(int k) {
+        int at = offset(k);
+        byte[] key = new byte[_map.getShort(at) & 0xffff];
+        _map.get(at + Short.BYTES, key);
+        return key;
+    }
+
+    /** Returns the ID of the Kth sorted record. */
+    private String idAt(int k) {
+        int at = offset(k);
+        byte[] id = new byte[Utils.UID_BYTES];
+        _map.get(at + Short.BYTES + (_map.getShort(at) & 0xffff), id);
+        return Utils.uidString(id, 0);
+    }
+
+    /** Returns the Kth sorted record. */
+    private Record recordAt(int k) {
+        return new Record(keyAt(k), idAt(k));
+    }
+
+    /** Replaces the file with the sorted, distinct RECORDS, writing it to
+     *  a temporary file that is then renamed into place, or replaces the
+     *  index held in memory if there is no file. */
+    private void rewrite(List<Record> records) {
+        Record[] sorted = records.toArray(new Record[0]);
+        Arrays.sort(sorted);
+        List<Record> distinct = new ArrayList<>();
+        for (Record r : sorted) {
+            if (distinct.isEmpty()
+                    || r.compareTo(distinct.get(distinct.size() - 1)) != 0) {
+                distinct.add(r);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(distinct.size());
+            int at = HEADER + distinct.size() * Integer.BYTES;
+            for (Record r : distinct) {
+                out.writeInt(at);
+                at += r.size();
+            }
+            for (Record r : distinct) {
+                r.write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_file == null) {
+            _map = ByteBuffer.wrap(bytes.toByteArray());
+            scan();
+            return;
+        }
+        File tmp = new File(_file.getPath() + ".tmp");
+        Utils.writeContents(tmp, bytes.toByteArray());
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        load();
+    }
+
+    /** Maps the file and reads its unsorted tail. */
+    private void load() {
+        if (_file == null || !_file.isFile()) {
+            _tail = new ArrayList<>();
+            _sorted = 0;
+            _map = null;
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(_file.toPath())) {
+            _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        scan();
+    }
+
+    /** Reads the header and unsorted tail of the index in _map. */
+    private void scan() {
+        _tail = new ArrayList<>();
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (_map.get(i) != MAGIC[i]) {
+                throw Utils.error("not a message index: %s", _file);
+            }
+        }
+        _sorted = _map.getInt(8);
+        int at = _sorted == 0 ? HEADER : offset(_sorted - 1);
+        if (_sorted > 0) {
+            at += Short.BYTES + (_map.getShort(at) & 0xffff)
+                + Utils.UID_BYTES;
+        }
+        while (at < _map.capacity()) {
+            byte[] key = new byte[_map.getShort(at) & 0xffff];
+            _map.get(at + Short.BYTES, key);
+            at += Short.BYTES + key.length;
+            byte[] id = new byte[Utils.UID_BYTES];
+            _map.get(at, id);
+            at += Utils.UID_BYTES;
+            _tail.add(new Record(key, Utils.uidString(id, 0)));
+        }
+    }
+
+    /** A key and the commit ID filed under it. */
+    private static class Record implements Comparable<Record> {
+        /** The record filing ID under KEY. */
+        Record(byte[] key, String id) {
+            _key = key;
+            _id = id;
+        }
+
+        @Override
+        public int compareTo(Record other) {
+            int c = KEYS.compare(_key, other._key);
+            return c != 0 ? c : _id.compareTo(other._id);
+        }
+
+        /** Returns the number of bytes this takes in the file. */
+        int size() {
+            return Short.BYTES + _key.length + Utils.UID_BYTES;
+        }
+
+        /** Writes this to OUT. */
+        void write(DataOutputStream out) throws IOException {
+            out.writeShort(_key.length);
+            out.write(_key);
+            out.write(Utils.uidBytes(_id));
+        }
+
+        /** The key. */
+        private final byte[] _key;
+        /** The commit ID. */
+        private final String _id;
+    }
+
+    /** The index of the current repository, once read. */
+    private static MessageIndex _index;
+
+    /** The index file, or null if the index is only in memory. */
+    private final File _file;
+    /** The mapped file, the index held in memory, or null if it is
+     *  empty. */
+    private ByteBuffer _map;
+    /** Number of sorted records. */
+    private int _sorted;
+    /** Records after the sorted ones. */
+    private List<Record> _tail;
+}
@@ -0,0 +1,39 @@
+package gitlet;
+import org.junit.Test;
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+/** Tests for the commit message index.
+ * @author Devun Amoranto*/
+public class MessageIndexTest {
+
+    @Test
+    public void words() {
+        assertEquals(Arrays.asList("fix", "the", "wug", "2"),
+                     MessageIndex.words("  Fix the WUG (#2)."));
+        assertTrue(MessageIndex.words("...").isEmpty());
+    }
+
+    @Test
+    public void lookups() {
+        File f = Utils.join(Main.repository(), "_testMessageIndex");
+        f.delete();
+        MessageIndex index = new MessageIndex(f);
+        int n = MessageIndex.MAX_TAIL;
+        for (int i = 0; i < n; i += 1) {
+            index.add(Utils.sha1("commit " + i), "Change number " + i);
+        }
+        String odd = Utils.sha1("odd");
+        index.add(odd, "Odd one out");
+        MessageIndex reread = new MessageIndex(f);
+        assertEquals(n, reread.withWord("CHANGE").size());
+        assertEquals("[" + Utils.sha1("commit 7") + "]",
+                     reread.withMessage("Change number 7").toString());
+        assertTrue(reread.withMessage("Change number").isEmpty());
+        assertEquals(1 + 10 + 24, reread.withPrefix("10").size());
+        assertEquals("[" + odd + "]", reread.withPrefix("ou").toString());
+        assertTrue(reread.withWord("out!").isEmpty());
+        f.delete();
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache of objects read from the object store, keyed by object ID.
+ *  Each entry has a weight, roughly its size in bytes, and once the total
+ *  weight passes a limit the least recently used entries are evicted.
+ *  Hits and misses are counted.  Objects are immutable once stored, so a
+ *  cached entry never goes stale.
+ *  @author Devun Amoranto
+ */
+class ObjectCache {
+
+    /** An empty cache holding at most MAXWEIGHT in total. */
+    ObjectCache(long maxWeight) {
+        _maxWeight = maxWeight;
+    }
+
+    /** Returns the object cached as ID, or null, counting a hit or a
+     *  miss. */
+    synchronized Object get(String id) {
+        Entry e = _entries.get(id);
+        if (e == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return e._value;
+    }
+
+    /** Caches VALUE, of weight WEIGHT, as ID, evicting the least recently
+     *  used entries if need be.  Values heavier than the whole cache are
+     *  not kept. */
+    synchronized void put(String id, Object value, long weight) {
+        if (weight > _maxWeight) {
+            return;
+        }
+        Entry old = _entries.put(id, new Entry(value, weight));
+        if (old != null) {
+            _weight -= old._weight;
+        }
+        _weight += weight;
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_weight > _maxWeight) {
+            Entry e = eldest.next();
+            _weight -= e._weight;
+            eldest.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** Empties the cache, keeping the counters. */
+    synchronized void clear() {
+        _entries.clear();
+        _weight = 0;
+    }
+
+    /** Returns the number of entries. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Returns the total weight of the entries. */
+    synchronized long weight() {
+        return _weight;
+    }
+
+    /** Returns the number of lookups that found their object. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of lookups that did not. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Returns the number of entries evicted to make room. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d objects, %d bytes; %d hits, %d misses,"
+                             + " %d evictions", _entries.size(), _weight,
+                             _hits, _misses, _evictions);
+    }
+
+    /** One cached object. */
+    private static class Entry {
+        /** An entry for VALUE of weight WEIGHT. */
+        Entry(Object value, long weight) {
+            _value = value;
+            _weight = weight;
+        }
+
+        /** The cached object. */
+        private final Object _value;
+        /** Its weight. */
+        private final long _weight;
+    }
+
+    /** Entries, least recently used first. */
+    private final Map<String, Entry> _entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    /** Largest total weight kept. */
+    private final long _maxWeight;
+    /** Total weight of the entries. */
+    private long _weight;
+    /** Counters. */
+    private long _hits, _misses, _evictions;
+}
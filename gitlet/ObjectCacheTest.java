@@ -0,0 +1,39 @@
+package gitlet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+/** Tests for the object cache.
+ * @author Devun Amoranto*/
+public class ObjectCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ObjectCache cache = new ObjectCache(100);
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C", 40);
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals(80, cache.weight());
+        assertEquals(1, cache.evictions());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void replaceAndOversize() {
+        ObjectCache cache = new ObjectCache(100);
+        cache.put("a", "A", 60);
+        cache.put("a", "A2", 30);
+        assertEquals(30, cache.weight());
+        assertEquals("A2", cache.get("a"));
+        cache.put("big", "B", 101);
+        assertNull(cache.get("big"));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.weight());
+        assertNull(cache.get("a"));
+    }
+}
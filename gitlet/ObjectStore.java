@@ -0,0 +1,540 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+
+/** Loads commits, trees and blobs by ID, either from loose files in
+ *  .objects/ or from the packs in .objects/pack/.  Recently used commits,
+ *  trees, file maps and the contents of recently used small blobs are kept in
+ *  one ObjectCache of bounded size, so that walking history, merging,
+ *  and resolving chains of deltas do not reread the same objects.
+ *  @author Devun Amoranto
+ */
+class ObjectStore {
+
+    /** Approximate number of bytes of objects kept in the cache. */
+    static final long CACHE_SIZE = 1L << 25;
+
+    /** Largest blob whose contents are cached. */
+    static final int MAX_CACHED_BLOB = 1 << 20;
+
+    /** Longest chain of deltas repack will build for one file. */
+    static final int MAX_DELTA_DEPTH = 16;
+
+    /** Rough number of bytes a commit takes in memory, apart from its
+     *  files, and the number each file adds. */
+    private static final int COMMIT_WEIGHT = 256, FILE_WEIGHT = 160;
+
+    /** Prefixes the ID of a tree to key the flattened map of all its
+     *  files in the cache. */
+    private static final String FILES_KEY = "files:";
+
+    /** Recently used commits, trees, file maps and blob contents. */
+    private static final ObjectCache CACHE = new ObjectCache(CACHE_SIZE);
+
+    /** The packs in .objects/pack/, once read. */
+    private static List<PackFile> _packs;
+
+    /** Returns the .objects/ directory. */
+    static File objects() {
+        return Utils.join(Main.repository(), ".objects/");
+    }
+
+    /** Returns the directory holding packs. */
+    static File packDirectory() {
+        return Utils.join(objects(), "pack");
+    }
+
+    /** Returns true iff an object named ID has been stored. */
+    static boolean contains(String id) {
+        if (id == null) {
+            return false;
+        }
+        if (Utils.join(objects(), id).isFile()) {
+            return true;
+        }
+        for (PackFile p : packs()) {
+            if (p.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the commit named ID.  Only its header is read; its trees
+     *  are read when its files are asked for. */
+    static Commit readCommit(String id) {
+        Object cached = CACHE.get(id);
+        if (cached instanceof Commit) {
+            return (Commit) cached;
+        }
+        Commit c = read(id, Commit.class);
+        cache(c);
+        return c;
+    }
+
+    /** Returns the blob named ID.  Its contents are not read until they
+     *  are asked for. */
+    static Blob readBlob(String id) {
+        return new Blob(id);
+    }
+
+    /** Remembers the commit C, whose trees are cached apart from it. */
+    static void cache(Commit c) {
+        CACHE.put(c.getCommitID(), c, COMMIT_WEIGHT);
+    }
+
+    /** Returns the cache of objects. */
+    static ObjectCache cache() {
+        return CACHE;
+    }
+
+    /** Returns the object named ID as an EXPECTEDCLASS, wherever it is
+     *  stored. */
+    static <T extends Serializable> T read(String id, Class<T> expectedClass) {
+        return Utils.readObject(openStored(id), expectedClass);
+    }
+
+    /** Returns a stream of the uncompressed contents of the object named
+     *  ID, wherever it is stored. */
+    static InputStream openObject(String id) {
+        Object cached = CACHE.get(id);
+        if (cached instanceof byte[]) {
+            return new ByteArrayInputStream((byte[]) cached);
+        }
+        return openStored(id);
+    }
+
+    /** Returns a stream of the uncompressed contents of the object named
+     *  ID, read from wherever it is stored rather than the cache, or
+     *  converted in memory from the first version's objects (see
+     *  Legacy). */
+    private static InputStream openStored(String id) {
+        File loose = Utils.join(objects(), id);
+        if (loose.isFile()) {
+            return Utils.openObject(loose);
+        }
+        for (PackFile p : packs()) {
+            InputStream in = p.open(id);
+            if (in != null) {
+                return in;
+            }
+        }
+        InputStream converted = Legacy.open(id);
+        if (converted != null) {
+            return converted;
+        }
+        throw Utils.error("No object %s", id);
+    }
+
+    /** Returns the uncompressed contents of the object named ID, caching
+     *  them if they are small.  The array may be shared, and must not be
+     *  changed. */
+    static byte[] readBytes(String id) {
+        Object cached = CACHE.get(id);
+        if (cached instanceof byte[]) {
+            return (byte[]) cached;
+        }
+        byte[] result;
+        try (InputStream in = openStored(id)) {
+            result = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (result.length <= MAX_CACHED_BLOB) {
+            CACHE.put(id, result, result.length);
+        }
+        return result;
+    }
+
+    /** Stores the contents of SOURCE as the loose object ID, streaming
+     *  them through the compressor into a temporary file that is then
+     *  renamed into place.  Without compression, the contents are copied
+     *  as they are, with no header, unless they start like a compressed
+     *  object, so that checkout can copy or link them straight back. */
+    static void writeObject(String id, File source) {
+        File tmp = tempFile(id);
+        try {
+            if (Utils.compressionLevel() == Deflater.NO_COMPRESSION
+                    && !Utils.looksCompressed(source)) {
+                Files.copy(source.toPath(), tmp.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (OutputStream out = Utils.compressedOutput(tmp)) {
+                    Files.copy(source.toPath(), out);
+                }
+            }
+            install(tmp, id);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores CONTENTS as the loose object ID, always with a header. */
+    static void writeObject(String id, byte[] contents) {
+        File tmp = tempFile(id);
+        try {
+            try (OutputStream out = Utils.compressedOutput(tmp)) {
+                out.write(contents);
+            }
+            install(tmp, id);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a new, empty temporary file in .objects/ for writing the
+     *  object ID.  Each writer gets its own, so that threads or processes
+     *  storing the same object at once do not write over each other. */
+    private static File tempFile(String id) {
+        objects().mkdir();
+        try {
+            return Files.createTempFile(objects().toPath(), id + ".",
+                                        ".tmp").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames the finished temporary file TMP to the loose object ID. */
+    private static void install(File tmp, String id) throws IOException {
+        Files.move(tmp.toPath(), Utils.join(objects(), id).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns true iff checkouts should hard-link working files to the
+     *  loose objects stored without a header, as set by the system
+     *  property gitlet.checkout or the environment variable
+     *  GITLET_CHECKOUT being "link".  Linked files are made read-only.
+     *  The mode is unsafe for checkouts that are written: a file linked
+     *  this way is the stored object itself, so a program that writes it
+     *  in place (as root may, read-only or not) changes the object too.
+     *  StatCache.hash refuses such a file once it notices, but cannot
+     *  undo the damage; use the mode only for checkouts that are only
+     *  read, as in CI. */
+    static boolean linkCheckouts() {
+        return "link".equals(System.getProperty(
+            "gitlet.checkout", System.getenv("GITLET_CHECKOUT")));
+    }
+
+    /** Writes the contents of the object ID to TARGET, replacing any file
+     *  there.  A loose object stored uncompressed is hard-linked into place
+     *  if linkCheckouts() and it has no header, and is otherwise copied by
+     *  FileChannel.transferTo, so its bytes never pass through the JVM's
+     *  heap; other objects are streamed through openObject. */
+    static void materialize(String id, File target) {
+        File loose = Utils.join(objects(), id);
+        try {
+            Files.deleteIfExists(target.toPath());
+            long offset = loose.isFile() ? Utils.rawOffset(loose) : -1;
+            if (offset == 0 && linkCheckouts() && link(loose, target)) {
+                return;
+            }
+            if (offset >= 0) {
+                try (FileChannel in = FileChannel.open(loose.toPath(),
+                         StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(target.toPath(),
+                         StandardOpenOption.CREATE_NEW,
+                         StandardOpenOption.WRITE)) {
+                    long size = in.size();
+                    for (long at = offset; at < size; ) {
+                        at += in.transferTo(at, size - at, out);
+                    }
+                }
+                return;
+            }
+            try (InputStream in = openObject(id);
+                 OutputStream out = Files.newOutputStream(target.toPath())) {
+                in.transferTo(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes TARGET a read-only hard link to the object file LOOSE,
+     *  returning false if the file system cannot. */
+    private static boolean link(File loose, File target) {
+        try {
+            Files.createLink(target.toPath(), loose.toPath());
+        } catch (IOException | UnsupportedOperationException excp) {
+            return false;
+        }
+        target.setWritable(false);
+        return true;
+    }
+
+    /** Returns the tree named ID. */
+    static Tree readTree(String id) {
+        Object cached = CACHE.get(id);
+        if (cached instanceof Tree) {
+            return (Tree) cached;
+        }
+        Tree t = read(id, Tree.class);
+        cache(id, t);
+        return t;
+    }
+
+    /** Remembers the tree T, named ID. */
+    static void cache(String id, Tree t) {
+        CACHE.put(id, t, COMMIT_WEIGHT + FILE_WEIGHT * t.size());
+    }
+
+    /** Returns every file in the tree named ID, as a map from paths to
+     *  blob IDs. */
+    static FileMap readFiles(String id) {
+        FileMap files = cachedFiles(id);
+        if (files == null) {
+            files = FileMap.of(Tree.files(id));
+            cacheFiles(id, files);
+        }
+        return files;
+    }
+
+    /** Returns the files of the tree named ID if they are cached, and
+     *  otherwise null. */
+    static FileMap cachedFiles(String id) {
+        Object cached = CACHE.get(FILES_KEY + id);
+        return cached instanceof FileMap ? (FileMap) cached : null;
+    }
+
+    /** Remembers FILES as the files of the tree named ID. */
+    static void cacheFiles(String id, FileMap files) {
+        CACHE.put(FILES_KEY + id, files,
+                  COMMIT_WEIGHT + FILE_WEIGHT * files.size());
+    }
+
+    /** Returns the IDs of all loose objects. */
+    static List<String> looseObjects() {
+        List<String> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(objects());
+        if (names != null) {
+            for (String name : names) {
+                if (name.length() == Utils.UID_LENGTH) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the packs in the repository. */
+    static synchronized List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(packDirectory());
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        _packs.add(new PackFile(
+                            Utils.join(packDirectory(), name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Forgets the packs found so far, so that they are looked for again
+     *  when next needed. */
+    static synchronized void reset() {
+        if (_packs != null) {
+            for (PackFile p : _packs) {
+                p.close();
+            }
+        }
+        _packs = null;
+    }
+
+    /** Moves every object, loose or packed, into a single new pack,
+     *  delta-encoding each version of a file or directory tree against
+     *  the previous version of the same path in the COMMITS, then removes
+     *  the loose objects and old packs. */
+    static void repack(Collection<String> commits) {
+        repack(commits, id -> true);
+    }
+
+    /** Repacks as for repack(COMMITS), but leaves out of the new pack
+     *  the objects for which KEEP is false.  Those that are loose stay
+     *  loose, and those that are packed are dropped. */
+    static void repack(Collection<String> commits, Predicate<String> keep) {
+        LinkedHashSet<String> all = new LinkedHashSet<>();
+        List<Commit> history = new ArrayList<>();
+        for (String id : commits) {
+            history.add(readCommit(id));
+        }
+        history.sort(Comparator.comparing(Commit::getDateInstance));
+        DeltaPlan plan = new DeltaPlan(all);
+        for (Commit c : history) {
+            all.add(c.getCommitID());
+        }
+        for (Commit c : history) {
+            planTree(c.getTreeID(), "", plan);
+        }
+        List<PackFile> oldPacks = new ArrayList<>(packs());
+        List<String> loose = looseObjects();
+        all.addAll(loose);
+        for (PackFile p : oldPacks) {
+            for (int k = 0; k < p.size(); k += 1) {
+                all.add(p.idAt(k));
+            }
+        }
+        boolean dropped = all.removeIf(keep.negate());
+        if (all.isEmpty()
+                || loose.isEmpty() && oldPacks.size() <= 1 && !dropped) {
+            return;
+        }
+        packDirectory().mkdir();
+        File index = PackFile.write(packDirectory(),
+                                    new ArrayList<>(all), plan._bases);
+        for (PackFile p : oldPacks) {
+            p.close();
+            if (!p.packFile().getName().equals(
+                    index.getName().replace(".idx", ".pack"))) {
+                p.packFile().delete();
+                Utils.join(packDirectory(), p.packFile().getName()
+                           .replace(".pack", ".idx")).delete();
+            }
+        }
+        for (String id : loose) {
+            if (all.contains(id)) {
+                Utils.join(objects(), id).delete();
+            }
+        }
+        _packs = null;
+    }
+
+    /** Rewrites each of the COMMITS, and each tree they use, that is
+     *  stored in Java's serialized form in the form given by Codec, under
+     *  the same ID, and stores the trees and blobs converted in memory
+     *  from the first version's objects (see Legacy).  Returns the number
+     *  of objects written.  Everything is read, in parallel, before
+     *  anything is written, as a packed delta may be based on an object
+     *  being rewritten; then packed objects that were rewritten loose are
+     *  packed again. */
+    static int migrate(Collection<String> commits) {
+        Map<String, byte[]> rewritten = new ConcurrentHashMap<>();
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        new ArrayList<>(commits).parallelStream().forEach(id -> {
+            reencode(id, Commit.class, rewritten);
+            reencodeTree(readCommit(id).getTreeID(), seen, rewritten);
+        });
+        for (Map.Entry<String, byte[]> e : Legacy.pending().entrySet()) {
+            if (!contains(e.getKey())) {
+                rewritten.put(e.getKey(), e.getValue());
+            }
+        }
+        rewritten.entrySet().parallelStream()
+            .forEach(e -> writeObject(e.getKey(), e.getValue()));
+        Legacy.reset();
+        CACHE.clear();
+        if (!rewritten.isEmpty() && !packs().isEmpty()) {
+            repack(commits);
+        }
+        return rewritten.size();
+    }
+
+    /** Adds the tree ID and the trees under it to REWRITTEN as for
+     *  reencode, unless they are in SEEN, adding them to SEEN. */
+    private static void reencodeTree(String id, Set<String> seen,
+                                     Map<String, byte[]> rewritten) {
+        if (!seen.add(id)) {
+            return;
+        }
+        reencode(id, Tree.class, rewritten);
+        for (String sub : readTree(id).dirEntries().values()) {
+            reencodeTree(sub, seen, rewritten);
+        }
+    }
+
+    /** Puts the object ID, an EXPECTEDCLASS, into REWRITTEN in the form
+     *  given by Codec, if it is stored serialized. */
+    private static void reencode(
+            String id, Class<? extends Serializable> expectedClass,
+            Map<String, byte[]> rewritten) {
+        byte[] bytes;
+        try (InputStream in = openStored(id)) {
+            bytes = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!Codec.isEncoded(bytes)) {
+            rewritten.put(id, Codec.encode(Utils.readObject(
+                new ByteArrayInputStream(bytes), expectedClass)));
+        }
+    }
+
+    /** Adds the tree ID, for the directory DIR ("" for the root, and
+     *  otherwise ending in '/'), and everything under it to PLAN.  A tree
+     *  seen before is skipped with all it holds. */
+    private static void planTree(String id, String dir, DeltaPlan plan) {
+        if (!plan.add(dir, id)) {
+            return;
+        }
+        Tree t = readTree(id);
+        for (Map.Entry<String, String> e : t.fileEntries().entrySet()) {
+            plan.add(dir + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : t.dirEntries().entrySet()) {
+            planTree(e.getValue(), dir + e.getKey() + "/", plan);
+        }
+    }
+
+    /** The delta bases chosen by repack: each new version of a path is
+     *  based on the previous version of that path, in chains at most
+     *  MAX_DELTA_DEPTH long. */
+    private static class DeltaPlan {
+        /** A plan adding the objects it sees to ALL. */
+        DeltaPlan(LinkedHashSet<String> all) {
+            _all = all;
+        }
+
+        /** Adds ID as the next version of PATH, returning false if it has
+         *  been seen already. */
+        boolean add(String path, String id) {
+            if (!_all.add(id)) {
+                return false;
+            }
+            String prev = _latest.put(path, id);
+            int depth = prev == null ? 0 : _depths.get(prev) + 1;
+            if (depth > 0 && depth <= MAX_DELTA_DEPTH) {
+                _bases.put(id, prev);
+                _depths.put(id, depth);
+            } else {
+                _depths.put(id, 0);
+            }
+            return true;
+        }
+
+        /** Every object seen. */
+        private final LinkedHashSet<String> _all;
+        /** The delta base of each object that has one. */
+        private final HashMap<String, String> _bases = new HashMap<>();
+        /** The length of each object's delta chain. */
+        private final HashMap<String, Integer> _depths = new HashMap<>();
+        /** The latest version of each path. */
+        private final HashMap<String, String> _latest = new HashMap<>();
+    }
+}
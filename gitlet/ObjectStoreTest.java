@@ -0,0 +1,141 @@
+package gitlet;
+import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+/** Tests for storing blobs uncompressed and checking them out by copying
+ *  or linking, and for migrating objects that have been packed.
+ * @author Devun Amoranto*/
+public class ObjectStoreTest {
+
+    /** Returns a new working file named NAME holding CONTENTS. */
+    private static File working(String name, String contents) {
+        File f = new File(name);
+        f.delete();
+        Utils.writeContents(f, contents.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    public void rawCopy() throws IOException {
+        System.setProperty("gitlet.compression", "0");
+        try {
+            String text = "stored as is " + System.nanoTime();
+            File source = working("_testRawSource", text);
+            String id = Utils.sha1(source);
+            ObjectStore.writeObject(id, source);
+            File loose = Utils.join(ObjectStore.objects(), id);
+            assertArrayEquals(Utils.readContents(source),
+                              Utils.readContents(loose));
+            assertEquals(0, Utils.rawOffset(loose));
+            File target = new File("_testRawTarget");
+            ObjectStore.materialize(id, target);
+            assertEquals(text, Utils.readContentsAsString(target));
+            assertFalse(Files.isSameFile(target.toPath(), loose.toPath()));
+            source.delete();
+            target.delete();
+            loose.delete();
+        } finally {
+            System.clearProperty("gitlet.compression");
+        }
+    }
+
+    @Test
+    public void linkCheckout() throws IOException {
+        System.setProperty("gitlet.compression", "0");
+        System.setProperty("gitlet.checkout", "link");
+        try {
+            String text = "linked " + System.nanoTime();
+            File source = working("_testLinkSource", text);
+            String id = Utils.sha1(source);
+            ObjectStore.writeObject(id, source);
+            File loose = Utils.join(ObjectStore.objects(), id);
+            File target = new File("_testLinkTarget");
+            ObjectStore.materialize(id, target);
+            assertTrue(Files.isSameFile(target.toPath(), loose.toPath()));
+            assertFalse(Files.getPosixFilePermissions(target.toPath())
+                        .contains(PosixFilePermission.OWNER_WRITE));
+            StatCache cache = new StatCache();
+            cache.record(target, id);
+            assertEquals(id, cache.hash(target));
+            target.setWritable(true);
+            Files.write(target.toPath(), "!".getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+            try {
+                cache.hash(target);
+                fail("hashed a file written through its link");
+            } catch (GitletException excp) {
+                assertTrue(excp.getMessage().contains(id));
+            }
+            source.delete();
+            target.delete();
+            loose.delete();
+        } finally {
+            System.clearProperty("gitlet.compression");
+            System.clearProperty("gitlet.checkout");
+        }
+    }
+
+    @Test
+    public void migratePackedTrees() {
+        List<String> commits = new ArrayList<>();
+        List<Map<String, String>> versions = new ArrayList<>();
+        HashMap<String, String> files = new HashMap<>();
+        String parent = null;
+        for (int i = 0; i < 9; i += 1) {
+            for (int j = 0; j < 20; j += 1) {
+                String name = "d/packed" + j + ".txt";
+                if (i == 0 || j == i) {
+                    byte[] text = ("packed " + j + " version " + i
+                                   + " " + System.nanoTime())
+                        .getBytes(StandardCharsets.UTF_8);
+                    String blob = Utils.sha1(text);
+                    ObjectStore.writeObject(blob, text);
+                    files.put(name, blob);
+                }
+            }
+            LinkedHashMap<String, Tree> trees = new LinkedHashMap<>();
+            String tree = Tree.make(files, trees);
+            for (Map.Entry<String, Tree> e : trees.entrySet()) {
+                ObjectStore.writeObject(e.getKey(),
+                                        Utils.serialize(e.getValue()));
+            }
+            String id = Utils.sha1("packed commit " + i + tree);
+            Commit c = Commit.restore(id, parent, null, tree, "packed " + i,
+                                      "master", new Date(), "");
+            ObjectStore.writeObject(id, Codec.encode(c));
+            commits.add(id);
+            versions.add(new HashMap<>(files));
+            parent = id;
+        }
+        ObjectStore.repack(commits);
+        String first = ObjectStore.readCommit(commits.get(0)).getTreeID();
+        ObjectStore.writeObject(first,
+                                Codec.encode(ObjectStore.readTree(first)));
+        ObjectStore.cache().clear();
+        for (int i = 0; i < commits.size(); i += 1) {
+            String tree = ObjectStore.readCommit(commits.get(i)).getTreeID();
+            assertEquals(versions.get(i), Tree.files(tree));
+        }
+        ObjectStore.cache().clear();
+        assertEquals(2 * commits.size() - 1, ObjectStore.migrate(commits));
+        ObjectStore.cache().clear();
+        for (int i = 0; i < commits.size(); i += 1) {
+            String tree = ObjectStore.readCommit(commits.get(i)).getTreeID();
+            assertTrue(Codec.isEncoded(ObjectStore.readBytes(tree)));
+            assertEquals(versions.get(i), Tree.files(tree));
+        }
+        assertEquals(0, ObjectStore.migrate(commits));
+    }
+}
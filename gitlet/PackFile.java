@@ -0,0 +1,418 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A pack of objects stored in a single file, along with a sorted index
+ *  of the IDs in it.  The pack pack-X.pack holds a header ("GPAK",
+ *  version, count) followed by one entry per object: a kind byte (FULL
+ *  or DELTA), the 20-byte ID of the base for deltas, the inflated and
+ *  deflated lengths as longs, then the deflated bytes.  The index pack-X.idx
+ *  holds a header ("GIDX", version, count), the sorted 20-byte IDs, and
+ *  then the offset of each object's entry in the pack.
+ *  @author Devun Amoranto
+ */
+class PackFile {
+
+    /** Format version of packs and their indices. */
+    static final int VERSION = 2;
+    /** Entry holding the object's complete contents. */
+    static final byte FULL = 0;
+    /** Entry holding a Delta against another object. */
+    static final byte DELTA = 1;
+
+    /** Objects larger than this many bytes are never delta-encoded. */
+    static final int MAX_DELTA_SIZE = 1 << 22;
+
+    /** Pack header magic number. */
+    private static final byte[] PACK_MAGIC = {'G', 'P', 'A', 'K'};
+    /** Index header magic number. */
+    private static final byte[] INDEX_MAGIC = {'G', 'I', 'D', 'X'};
+    /** Length of the header of a pack or index. */
+    private static final int HEADER = 12;
+    /** Length of an entry's header in the pack. */
+    private static final int ENTRY_HEADER = 1 + Utils.UID_BYTES + 16;
+
+    /** The pack read through the index file INDEX. */
+    PackFile(File index) {
+        String name = index.getName();
+        _pack = new File(index.getParentFile(),
+                         name.substring(0, name.length() - 4) + ".pack");
+        try (FileChannel ch = FileChannel.open(index.toPath())) {
+            _index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (int i = 0; i < INDEX_MAGIC.length; i += 1) {
+            if (_index.get(i) != INDEX_MAGIC[i]) {
+                throw Utils.error("not a pack index: %s", index);
+            }
+        }
+        if (_index.getInt(INDEX_MAGIC.length) != VERSION) {
+            throw Utils.error("unsupported pack version: %s", index);
+        }
+        _count = _index.getInt(8);
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Returns the ID of the Kth object in ID order. */
+    String idAt(int k) {
+        byte[] id = new byte[Utils.UID_BYTES];
+        _index.get(HEADER + k * Utils.UID_BYTES, id);
+        return Utils.uidString(id, 0);
+    }
+
+    /** Returns the position of ID in the index, or -1 if it is not in
+     *  this pack.  Takes O(log n) time. */
+    int find(String id) {
+        byte[] key = Utils.uidBytes(id);
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareAt(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true iff ID is in this pack. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns a stream of the contents of the object ID in this pack, or
+     *  null if ID is not here.  Complete objects are inflated as they are
+     *  read; deltas are applied to their bases as read by base. */
+    InputStream open(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        long offset = _index.getLong(HEADER
+                + _count * Utils.UID_BYTES + k * Long.BYTES);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+            readFully(header, offset);
+            header.flip();
+            byte kind = header.get();
+            byte[] base = new byte[Utils.UID_BYTES];
+            header.get(base);
+            long length = header.getLong();
+            long packed = header.getLong();
+            if (kind == FULL) {
+                FileChannel ch = FileChannel.open(_pack.toPath(),
+                                                  StandardOpenOption.READ);
+                ch.position(offset + ENTRY_HEADER);
+                return new InflaterInputStream(
+                    new BufferedInputStream(Channels.newInputStream(ch),
+                                            Utils.BUFFER_SIZE),
+                    new Inflater(), Utils.BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inf.end();
+                        }
+                    }
+                };
+            }
+            ByteBuffer delta = ByteBuffer.allocate((int) packed);
+            readFully(delta, offset + ENTRY_HEADER);
+            return new ByteArrayInputStream(Delta.apply(
+                base(Utils.uidString(base, 0)),
+                inflate(delta.array(), (int) length)));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the object ID, the base of a delta in this
+     *  pack.  A base in this pack is read from it, as the delta was made
+     *  against those bytes, rather than from wherever ObjectStore finds
+     *  ID first: migrate rewrites objects loose, in a new form, under
+     *  the IDs they are packed under.  Bases are cached, under a key
+     *  belonging to this pack, as the rest of a chain of deltas needs
+     *  them too. */
+    private byte[] base(String id) {
+        if (!contains(id)) {
+            return ObjectStore.readBytes(id);
+        }
+        String key = _baseKey + id;
+        Object cached = ObjectStore.cache().get(key);
+        if (cached instanceof byte[]) {
+            return (byte[]) cached;
+        }
+        byte[] result;
+        try (InputStream in = open(id)) {
+            result = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (result.length <= ObjectStore.MAX_CACHED_BLOB) {
+            ObjectStore.cache().put(key, result, result.length);
+        }
+        return result;
+    }
+
+    /** Returns the open pack file, opening it if need be.  Reads through
+     *  it give their position, so threads can share it. */
+    private synchronized FileChannel channel() throws IOException {
+        if (_channel == null) {
+            _channel = FileChannel.open(_pack.toPath(),
+                                        StandardOpenOption.READ);
+        }
+        return _channel;
+    }
+
+    /** Releases the open pack file. */
+    synchronized void close() {
+        try {
+            if (_channel != null) {
+                _channel.close();
+                _channel = null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the pack file. */
+    File packFile() {
+        return _pack;
+    }
+
+    /** Writes the objects IDS, in that order, to a new pack in DIR named
+     *  for their IDs, storing ID as a delta against BASES.get(ID) where
+     *  that is non-null, among IDS, and shorter.  Contents are streamed
+     *  through ObjectStore, and only objects small enough to be
+     *  delta-encoded are ever held in memory.  The pack and then its
+     *  index are each written to a temporary file and renamed into place,
+     *  so that a reader, which finds packs by their indices, never sees
+     *  either half written.  Returns the index file of the new pack. */
+    static File write(File dir, List<String> ids, Map<String, String> bases) {
+        String[] sorted = ids.toArray(new String[0]);
+        Arrays.sort(sorted);
+        String name = "pack-" + Utils.sha1((Object[]) sorted);
+        File pack = Utils.join(dir, name + ".pack");
+        File index = Utils.join(dir, name + ".idx");
+        File tmp = Utils.join(dir, name + ".tmp");
+        HashMap<String, Long> offsets = new HashMap<>();
+        try (FileChannel out = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.put(PACK_MAGIC).putInt(VERSION).putInt(ids.size());
+            header.flip();
+            writeFully(out, header, 0);
+            out.position(HEADER);
+            HashSet<String> packed = new HashSet<>(ids);
+            for (String id : ids) {
+                offsets.put(id, out.position());
+                String base = bases.get(id);
+                writeEntry(out, id, packed.contains(base) ? base : null);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(tmp, pack);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            out.write(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.length);
+            for (String id : sorted) {
+                out.write(Utils.uidBytes(id));
+            }
+            for (String id : sorted) {
+                out.writeLong(offsets.get(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File indexTmp = Utils.join(dir, name + ".idx.tmp");
+        Utils.writeContents(indexTmp, buf.toByteArray());
+        install(indexTmp, index);
+        return index;
+    }
+
+    /** Renames the finished temporary file TMP to TARGET, replacing any
+     *  file there in one step. */
+    private static void install(File tmp, File target) {
+        try {
+            Files.move(tmp.toPath(), target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Appends the entry for object ID to OUT, as a delta against BASEID
+     *  if that is non-null and makes it shorter. */
+    private static void writeEntry(FileChannel out, String id, String baseID)
+        throws IOException {
+        long start = out.position();
+        byte kind = FULL;
+        byte[] base = new byte[Utils.UID_BYTES];
+        try (InputStream in = ObjectStore.openObject(id)) {
+            byte[] head = in.readNBytes(MAX_DELTA_SIZE + 1);
+            InputStream body = null;
+            if (baseID != null && head.length <= MAX_DELTA_SIZE) {
+                byte[] baseData;
+                try (InputStream b = ObjectStore.openObject(baseID)) {
+                    baseData = b.readNBytes(MAX_DELTA_SIZE + 1);
+                }
+                if (baseData.length <= MAX_DELTA_SIZE) {
+                    byte[] delta = Delta.create(baseData, head);
+                    if (delta.length < head.length / 2) {
+                        kind = DELTA;
+                        base = Utils.uidBytes(baseID);
+                        body = new ByteArrayInputStream(delta);
+                    }
+                }
+            }
+            if (body == null) {
+                body = new SequenceInputStream(
+                    new ByteArrayInputStream(head), in);
+            }
+            writeFully(out, ByteBuffer.allocate(ENTRY_HEADER), start);
+            out.position(start + ENTRY_HEADER);
+            long length = deflate(body, out);
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+            header.put(kind).put(base).putLong(length)
+                .putLong(out.position() - start - ENTRY_HEADER);
+            header.flip();
+            writeFully(out, header, start);
+        }
+    }
+
+    /** Compares the Kth ID in the index with KEY. */
+    private int compareAt(int k, byte[] key) {
+        int start = HEADER + k * Utils.UID_BYTES;
+        for (int i = 0; i < key.length; i += 1) {
+            int c = Integer.compare(_index.get(start + i) & 0xff,
+                                    key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Fills BUF from the pack starting at POSITION. */
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel().read(buf, position + buf.position()) < 0) {
+                throw Utils.error("truncated pack %s", _pack);
+            }
+        }
+    }
+
+    /** Compresses the rest of IN onto the end of OUT, returning the
+     *  number of bytes read from IN. */
+    private static long deflate(InputStream in, FileChannel out)
+        throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] input = new byte[Utils.BUFFER_SIZE];
+        byte[] output = new byte[Utils.BUFFER_SIZE];
+        long length = 0;
+        try {
+            for (int n = in.read(input); n >= 0; n = in.read(input)) {
+                length += n;
+                deflater.setInput(input, 0, n);
+                while (!deflater.needsInput()) {
+                    int k = deflater.deflate(output);
+                    out.write(ByteBuffer.wrap(output, 0, k));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int k = deflater.deflate(output);
+                out.write(ByteBuffer.wrap(output, 0, k));
+            }
+        } finally {
+            deflater.end();
+        }
+        return length;
+    }
+
+    /** Writes all of BUF to OUT at POSITION. */
+    private static void writeFully(FileChannel out, ByteBuffer buf,
+                                   long position) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf, position + buf.position());
+        }
+    }
+
+    /** Returns the LENGTH bytes that PACKED inflates to. */
+    private static byte[] inflate(byte[] packed, int length) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(packed);
+        byte[] result = new byte[length];
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int k = inflater.inflate(result, n, length - n);
+                if (k == 0 && inflater.needsInput()) {
+                    throw Utils.error("truncated pack entry");
+                }
+                n += k;
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** The pack file. */
+    private final File _pack;
+    /** The mapped index file. */
+    private final MappedByteBuffer _index;
+    /** Number of objects in the pack. */
+    private final int _count;
+    /** The open pack file, once needed. */
+    private FileChannel _channel;
+    /** The prefix of the cache keys of this pack's delta bases, distinct
+     *  for each PackFile, as a pack rewritten with the same objects keeps
+     *  its name. */
+    private final String _baseKey = "base" + PACKS.incrementAndGet() + ":";
+
+    /** The number of PackFiles opened so far. */
+    private static final AtomicLong PACKS = new AtomicLong();
+}
@@ -0,0 +1,210 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** A persistent record of the size, modification time, inode, and
+ *  content hash of working files, kept in .gitlet/_statCache, so that
+ *  files whose stat data has not changed need not be read to find their
+ *  hash.  As in git, an entry is trusted only if the file was last
+ *  modified before the cache itself was written; otherwise a change made
+ *  within the same clock tick could go unnoticed.  The cache is only an
+ *  optimization: one that cannot be read is treated as empty, and it is
+ *  written to a temporary file and renamed into place, so that a reader
+ *  never sees it half written.
+ *  @author Devun Amoranto
+ */
+class StatCache implements Serializable {
+
+    /** Fixed, so that caches written by earlier builds stay readable. */
+    private static final long serialVersionUID = -4496103459475877802L;
+
+    /** The stat data and hash of one file. */
+    private static class Entry implements Serializable {
+        /** Fixed, as for StatCache. */
+        private static final long serialVersionUID = 2124599081333747353L;
+
+        /** File size in bytes. */
+        private long _size;
+        /** Modification time in nanoseconds since the epoch. */
+        private long _mtime;
+        /** Inode number, or 0 where there is none. */
+        private long _inode;
+        /** SHA-1 hash of the contents. */
+        private String _hash;
+    }
+
+    /** Returns the cache for this repository, reading it the first time.
+     *  A cache that is missing or cannot be read is empty. */
+    static synchronized StatCache get() {
+        if (_cache == null) {
+            File f = file();
+            if (f.isFile()) {
+                try {
+                    _cache = Utils.readObject(f, StatCache.class);
+                    _cache._savedAt = Files.getLastModifiedTime(f.toPath())
+                        .to(TimeUnit.NANOSECONDS);
+                } catch (IllegalArgumentException | IOException excp) {
+                    _cache = null;
+                }
+            }
+            if (_cache == null) {
+                _cache = new StatCache();
+            }
+        }
+        return _cache;
+    }
+
+    /** Returns the file holding the cache. */
+    static File file() {
+        return Utils.join(Main.repository(), "_statCache");
+    }
+
+    /** Returns the SHA-1 hash of the contents of F, without reading F if
+     *  its stat data matches a trusted entry.  Refuses, rather than
+     *  return the hash of F, if F is hard-linked to the stored object it
+     *  was checked out from and has been written in place since.  Safe to
+     *  call from several threads at once. */
+    String hash(File f) {
+        String path = f.getPath();
+        Entry now = stat(f);
+        Entry old = _entries.get(path);
+        if (old != null && now != null && old._size == now._size
+                && old._mtime == now._mtime && old._inode == now._inode
+                && old._mtime < _savedAt) {
+            return old._hash;
+        }
+        String hash = Utils.sha1(f);
+        if (old != null && now != null && !hash.equals(old._hash)
+                && isLinkTo(now, old._hash)) {
+            throw Utils.error("%s was written through its link to the "
+                              + "stored object %s, which no longer holds "
+                              + "what it should.", path, old._hash);
+        }
+        if (now != null) {
+            now._hash = hash;
+            _entries.put(path, now);
+            _dirty = true;
+        }
+        return hash;
+    }
+
+    /** Records that F, which has just been written, has hash HASH. */
+    void record(File f, String hash) {
+        Entry now = stat(f);
+        if (now != null) {
+            now._hash = hash;
+            _entries.put(f.getPath(), now);
+            _dirty = true;
+        }
+    }
+
+    /** Forgets F. */
+    void forget(File f) {
+        if (_entries.remove(f.getPath()) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Writes the cache back if it has changed, to a temporary file that
+     *  then replaces the old one.  Nothing is written to a repository not
+     *  yet migrated from the first version of gitlet. */
+    void save() {
+        if (_dirty && Main.repository().isDirectory()
+                && !Legacy.present()) {
+            Path tmp = null;
+            try {
+                tmp = Files.createTempFile(Main.repository().toPath(),
+                                           "_statCache.", ".tmp");
+                Utils.writeObject(tmp.toFile(), this);
+                Files.move(tmp, file().toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                if (tmp != null) {
+                    tmp.toFile().delete();
+                }
+            }
+            _dirty = false;
+            try {
+                _savedAt = Files.getLastModifiedTime(file().toPath())
+                    .to(TimeUnit.NANOSECONDS);
+            } catch (IOException excp) {
+                _savedAt = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    /** Writes the cache back if it has been read and changed. */
+    static void flush() {
+        if (_cache != null) {
+            _cache.save();
+        }
+    }
+
+    /** Forgets the cache read so far, so that it is read again when next
+     *  needed. */
+    static synchronized void reset() {
+        _cache = null;
+    }
+
+    /** Returns true iff the file whose stat data is NOW shares its inode
+     *  with the loose object ID, as a working file hard-linked by a link
+     *  checkout does.  If so, writing the file in place has also changed
+     *  the object. */
+    private static boolean isLinkTo(Entry now, String id) {
+        if (now._inode == 0) {
+            return false;
+        }
+        Entry object = stat(Utils.join(ObjectStore.objects(), id));
+        return object != null && object._inode == now._inode;
+    }
+
+    /** Returns the stat data of F, or null if F cannot be read. */
+    private static Entry stat(File f) {
+        Path p = f.toPath();
+        Entry e = new Entry();
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(p, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            e._size = attrs.size();
+            e._mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return null;
+        }
+        try {
+            e._inode = ((Number) Files.getAttribute(p, "unix:ino"))
+                .longValue();
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            e._inode = 0;
+        }
+        return e;
+    }
+
+    /** The cache read for this repository. */
+    private static StatCache _cache;
+
+    /** Entries by path. */
+    private final Map<String, Entry> _entries = new ConcurrentHashMap<>();
+
+    /** Modification time of the cache file when it was read, in
+     *  nanoseconds.  Entries for files modified at or after this time are
+     *  not trusted. */
+    private transient long _savedAt = Long.MIN_VALUE;
+
+    /** True iff entries have changed since the cache was read. */
+    private transient volatile boolean _dirty;
+}
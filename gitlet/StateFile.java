@@ -0,0 +1,307 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/** The state of a repository (branches, head commit, stage), kept as named
+ *  sections of serialized bytes.  A checkpoint, .gitlet/_state, holds a
+ *  header ("GSTA", version, number of sections), a table of contents
+ *  giving each section's name, offset and length, and then the sections.
+ *  Changes since the checkpoint are appended to .gitlet/_state.journal as
+ *  batches, each a length, a CRC-32 and a list of replaced sections, and
+ *  each synced to disk once.  Reading replays every complete batch over
+ *  the checkpoint and stops at the first torn or corrupt one, so a crash
+ *  in the middle of a write loses that write and nothing else.  Once the
+ *  journal grows past MAX_JOURNAL bytes, a new checkpoint is written to a
+ *  temporary file, synced, and renamed into place.
+ *  @author Devun Amoranto
+ */
+class StateFile {
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Size past which the journal is folded into a new checkpoint. */
+    static final int MAX_JOURNAL = 1 << 18;
+
+    /** Header magic number. */
+    private static final byte[] MAGIC = {'G', 'S', 'T', 'A'};
+
+    /** The state kept in DIR, which need not hold any yet. */
+    StateFile(File dir) {
+        _dir = dir;
+        _checkpoint = Utils.join(dir, "_state");
+        _journal = Utils.join(dir, "_state.journal");
+        load();
+    }
+
+    /** Returns true iff none of the checkpoint, the journal, the commit
+     *  index, the commit graph, the message index and the directory of
+     *  packs has changed on disk since this last read or wrote them, or
+     *  was restamped. */
+    boolean isCurrent() {
+        return Arrays.equals(_stamp, stamp());
+    }
+
+    /** Records the files compared by isCurrent as they are now, once this
+     *  process has finished changing them. */
+    void restamp() {
+        _stamp = stamp();
+    }
+
+    /** Returns the section NAME, cast to CLS, or null if there is none.
+     *  Sections that have never been written are read from the file NAME
+     *  that older versions of gitlet kept them in, if it exists. */
+    <T extends Serializable> T read(String name, Class<T> cls) {
+        byte[] bytes = _sections.get(name);
+        if (bytes == null) {
+            File legacy = Utils.join(_dir, name);
+            if (!legacy.isFile()) {
+                return null;
+            }
+            return Utils.readObject(legacy, cls);
+        }
+        return Utils.readObject(new ByteArrayInputStream(bytes), cls);
+    }
+
+    /** Replaces the sections named by the keys of SECTIONS with their
+     *  values.  Only sections whose serialized bytes differ from what is
+     *  stored are written, all in one journal batch. */
+    void write(Map<String, ? extends Serializable> sections) {
+        TreeMap<String, byte[]> changed = new TreeMap<>();
+        for (Map.Entry<String, ? extends Serializable> e
+                 : sections.entrySet()) {
+            byte[] bytes = Utils.serialize(e.getValue());
+            if (!Arrays.equals(bytes, _sections.get(e.getKey()))) {
+                changed.put(e.getKey(), bytes);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        _sections.putAll(changed);
+        if (_journalSize + batchSize(changed) > MAX_JOURNAL
+                || !_checkpoint.exists()) {
+            checkpoint();
+        } else {
+            append(changed);
+        }
+    }
+
+    /** Writes all sections to a new checkpoint and empties the journal.
+     *  The files older versions of gitlet kept the sections in are then
+     *  deleted. */
+    void checkpoint() {
+        int tocSize = 0;
+        for (String name : _sections.keySet()) {
+            tocSize += 2 + utf8(name).length + 2 * Integer.BYTES;
+        }
+        int offset = MAGIC.length + 2 * Integer.BYTES + tocSize;
+        int total = offset;
+        for (byte[] bytes : _sections.values()) {
+            total += bytes.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        buf.put(MAGIC).putInt(VERSION).putInt(_sections.size());
+        for (Map.Entry<String, byte[]> e : _sections.entrySet()) {
+            byte[] name = utf8(e.getKey());
+            buf.putShort((short) name.length).put(name);
+            buf.putInt(offset).putInt(e.getValue().length);
+            offset += e.getValue().length;
+        }
+        for (byte[] bytes : _sections.values()) {
+            buf.put(bytes);
+        }
+        buf.flip();
+        File tmp = new File(_checkpoint.getPath() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+                ch.force(false);
+            }
+            Files.move(tmp.toPath(), _checkpoint.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(_journal.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _journalSize = 0;
+        _stamp = stamp();
+        for (String name : _sections.keySet()) {
+            Utils.join(_dir, name).delete();
+        }
+    }
+
+    /** Appends CHANGED to the journal as one batch and syncs it. */
+    private void append(TreeMap<String, byte[]> changed) {
+        byte[] body = encode(changed);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buf = ByteBuffer.allocate(2 * Integer.BYTES + body.length);
+        buf.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(_journal.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long at = _journalSize;
+            while (buf.hasRemaining()) {
+                at += ch.write(buf, at);
+            }
+            ch.truncate(at);
+            ch.force(false);
+            _journalSize = at;
+            _stamp = stamp();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the length of the journal batch holding CHANGED. */
+    private static int batchSize(Map<String, byte[]> changed) {
+        int size = 3 * Integer.BYTES;
+        for (Map.Entry<String, byte[]> e : changed.entrySet()) {
+            size += 2 + utf8(e.getKey()).length + Integer.BYTES
+                + e.getValue().length;
+        }
+        return size;
+    }
+
+    /** Returns the body of a journal batch holding SECTIONS. */
+    private static byte[] encode(Map<String, byte[]> sections) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(sections.size());
+            for (Map.Entry<String, byte[]> e : sections.entrySet()) {
+                byte[] name = utf8(e.getKey());
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the identity, size and modification time of each of the
+     *  files compared by isCurrent, as far as they can be found. */
+    private Object[] stamp() {
+        File[] files = {
+            _checkpoint, _journal, Utils.join(_dir, "_commitIndex"),
+            Utils.join(_dir, "_commitGraph"),
+            Utils.join(_dir, "_messageIndex"), ObjectStore.packDirectory()
+        };
+        Object[] result = new Object[3 * files.length];
+        int k = 0;
+        for (File f : files) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                    f.toPath(), BasicFileAttributes.class);
+                result[k] = attrs.fileKey();
+                result[k + 1] = attrs.size();
+                result[k + 2] = attrs.lastModifiedTime();
+            } catch (IOException excp) {
+                result[k] = null;
+            }
+            k += 3;
+        }
+        return result;
+    }
+
+    /** Reads the checkpoint and replays the journal over it. */
+    private void load() {
+        _stamp = stamp();
+        _sections = new TreeMap<>();
+        _journalSize = 0;
+        if (_checkpoint.isFile()) {
+            ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(_checkpoint));
+            byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buf.getInt() != VERSION) {
+                throw Utils.error("not a state file: %s", _checkpoint);
+            }
+            int count = buf.getInt();
+            for (int i = 0; i < count; i += 1) {
+                String name = readName(buf);
+                int offset = buf.getInt(), length = buf.getInt();
+                _sections.put(name, Arrays.copyOfRange(buf.array(), offset,
+                                                       offset + length));
+            }
+        }
+        if (_journal.isFile()) {
+            ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(_journal));
+            while (buf.remaining() >= 2 * Integer.BYTES) {
+                int start = buf.position();
+                int length = buf.getInt(), sum = buf.getInt();
+                if (length < 0 || length > buf.remaining()) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(buf.array(), buf.position(), length);
+                if ((int) crc.getValue() != sum) {
+                    break;
+                }
+                try {
+                    int count = buf.getInt();
+                    for (int i = 0; i < count; i += 1) {
+                        String name = readName(buf);
+                        byte[] bytes = new byte[buf.getInt()];
+                        buf.get(bytes);
+                        _sections.put(name, bytes);
+                    }
+                } catch (BufferUnderflowException
+                         | IllegalArgumentException excp) {
+                    buf.position(start);
+                    break;
+                }
+                buf.position(start + 2 * Integer.BYTES + length);
+                _journalSize = buf.position();
+            }
+        }
+    }
+
+    /** Reads a section name, a length and then UTF-8 bytes, from BUF. */
+    private static String readName(ByteBuffer buf) {
+        byte[] name = new byte[buf.getShort() & 0xffff];
+        buf.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Returns NAME encoded as UTF-8. */
+    private static byte[] utf8(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The repository directory. */
+    private final File _dir;
+    /** The checkpoint file. */
+    private final File _checkpoint;
+    /** The journal file. */
+    private final File _journal;
+    /** Current contents of all sections, by name. */
+    private TreeMap<String, byte[]> _sections;
+    /** Length of the valid part of the journal. */
+    private long _journalSize;
+    /** The stamp() of the files when this last read or wrote them. */
+    private Object[] _stamp;
+}
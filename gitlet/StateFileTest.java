@@ -0,0 +1,101 @@
+package gitlet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+/** Tests for the journaled state file.
+ * @author Devun Amoranto*/
+public class StateFileTest {
+
+    /** Makes a new temporary directory for each test's state file. */
+    @Before
+    public void makeDirectory() throws IOException {
+        _dir = Files.createTempDirectory("gitletState").toFile();
+    }
+
+    /** Deletes the directory made for the test and everything in it. */
+    @After
+    public void deleteDirectory() {
+        for (File f : _dir.listFiles()) {
+            f.delete();
+        }
+        _dir.delete();
+    }
+
+    /** Returns the empty directory made for this test. */
+    private File emptyDirectory() {
+        return _dir;
+    }
+
+    @Test
+    public void writeAndReread() {
+        File dir = emptyDirectory();
+        StateFile state = new StateFile(dir);
+        HashMap<String, String> sections = new HashMap<>();
+        sections.put("_currentBranch", "master");
+        sections.put("_other", "one");
+        state.write(sections);
+        sections.put("_other", "two");
+        state.write(sections);
+        File journal = Utils.join(dir, "_state.journal");
+        long size = journal.length();
+        assertTrue(size > 0);
+        state.write(sections);
+        assertEquals(size, journal.length());
+        StateFile reread = new StateFile(dir);
+        assertEquals("master", reread.read("_currentBranch", String.class));
+        assertEquals("two", reread.read("_other", String.class));
+        assertNull(reread.read("_missing", String.class));
+        reread.checkpoint();
+        assertFalse(journal.exists());
+        assertEquals("two", new StateFile(dir).read("_other", String.class));
+    }
+
+    @Test
+    public void tornBatchIgnored() throws IOException {
+        File dir = emptyDirectory();
+        StateFile state = new StateFile(dir);
+        HashMap<String, String> sections = new HashMap<>();
+        sections.put("_other", "one");
+        state.write(sections);
+        sections.put("_other", "two");
+        state.write(sections);
+        File journal = Utils.join(dir, "_state.journal");
+        sections.put("_other", "three");
+        state.write(sections);
+        try (RandomAccessFile f = new RandomAccessFile(journal, "rw")) {
+            f.setLength(journal.length() - 1);
+        }
+        assertEquals("two", new StateFile(dir).read("_other", String.class));
+        StateFile reread = new StateFile(dir);
+        sections.put("_other", "four");
+        reread.write(sections);
+        assertEquals("four", new StateFile(dir).read("_other", String.class));
+    }
+
+    @Test
+    public void legacyFilesRead() {
+        File dir = emptyDirectory();
+        HashSet<String> staged = new HashSet<>();
+        staged.add("wug.txt");
+        Utils.writeObject(Utils.join(dir, "_stagedToAdd"), staged);
+        StateFile state = new StateFile(dir);
+        assertEquals(staged, state.read("_stagedToAdd", HashSet.class));
+        HashMap<String, HashSet<String>> sections = new HashMap<>();
+        sections.put("_stagedToAdd", staged);
+        state.write(sections);
+        assertFalse(Utils.join(dir, "_stagedToAdd").exists());
+        assertEquals(staged,
+                     new StateFile(dir).read("_stagedToAdd", HashSet.class));
+    }
+
+    /** The directory holding this test's state file. */
+    private File _dir;
+}
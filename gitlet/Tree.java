@@ -0,0 +1,263 @@
+package gitlet;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** One directory of a commit's files, stored as an object named by the
+ *  SHA-1 of its encoded form (see Codec).  A tree maps the names of the
+ *  files directly in it to their blob IDs, and the names of its
+ *  subdirectories to the IDs of their trees, so a commit names all of
+ *  its files by the ID of one root tree.  Making a commit rewrites only
+ *  the trees of the directories it changes and shares every other
+ *  subtree with its parent, and comparing two trees skips the subtrees
+ *  they share.
+ *  @author Devun Amoranto
+ */
+class Tree implements Serializable {
+
+    /** Trees stored before they were encoded by Codec are read with Java
+     *  serialization, as this version of the class. */
+    private static final long serialVersionUID = -4726267491401766868L;
+
+    /** The tree with no files. */
+    private static final Tree EMPTY = new Tree(new TreeMap<>(),
+                                               new TreeMap<>());
+
+    /** A tree with the files FILES and the subdirectories DIRS. */
+    private Tree(TreeMap<String, String> files,
+                 TreeMap<String, String> dirs) {
+        _files = files;
+        _dirs = dirs;
+    }
+
+    /** Returns the ID of the tree holding FILES, which takes paths to
+     *  blob IDs, storing it and its subtrees first if SAVE. */
+    static String write(Map<String, String> files, boolean save) {
+        return update(null, files, save);
+    }
+
+    /** Returns the ID of the tree holding FILES, as write does, but
+     *  stores nothing, putting the tree and each tree under it into MADE,
+     *  by ID, instead. */
+    static String make(Map<String, String> files, Map<String, Tree> made) {
+        String id = rewrite(null, files, false, made);
+        return id != null ? id : store(EMPTY, false, made);
+    }
+
+    /** Returns the ID of the tree ROOT (the empty tree if null) with
+     *  CHANGES made to it, storing the new trees first if SAVE.  CHANGES
+     *  takes paths to their new blob IDs, or to null for paths to remove.
+     *  Only the trees on the way to a changed path are read or written;
+     *  directories left empty are dropped. */
+    static String update(String root, Map<String, String> changes,
+                         boolean save) {
+        if (root != null && changes.isEmpty()) {
+            return root;
+        }
+        String id = rewrite(root, changes, save, null);
+        return id != null ? id : store(EMPTY, save, null);
+    }
+
+    /** Returns the ID of the tree ID (empty if null) after CHANGES, whose
+     *  paths are relative to it, or null if they leave it empty.  Stores
+     *  the new trees if SAVE, and puts them into MADE if it is not
+     *  null. */
+    private static String rewrite(String id, Map<String, String> changes,
+                                  boolean save, Map<String, Tree> made) {
+        Tree old = id == null ? EMPTY : ObjectStore.readTree(id);
+        Tree t = new Tree(new TreeMap<>(old._files),
+                          new TreeMap<>(old._dirs));
+        TreeMap<String, HashMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                                      k -> new HashMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                t._files.remove(path);
+            } else {
+                t._files.put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> e
+                 : below.entrySet()) {
+            String sub = rewrite(t._dirs.get(e.getKey()), e.getValue(),
+                                 save, made);
+            if (sub == null) {
+                t._dirs.remove(e.getKey());
+            } else {
+                t._dirs.put(e.getKey(), sub);
+            }
+        }
+        if (t._files.isEmpty() && t._dirs.isEmpty()) {
+            return null;
+        }
+        return store(t, save, made);
+    }
+
+    /** Returns the ID of T, storing it first if SAVE and it is not
+     *  stored already, and putting it into MADE if that is not null. */
+    private static String store(Tree t, boolean save,
+                                Map<String, Tree> made) {
+        byte[] bytes = Codec.encode(t);
+        String id = Utils.sha1(bytes);
+        if (made != null) {
+            made.put(id, t);
+        }
+        if (save) {
+            if (!ObjectStore.contains(id)) {
+                ObjectStore.writeObject(id, bytes);
+            }
+            ObjectStore.cache(id, t);
+        }
+        return id;
+    }
+
+    /** Returns the blob ID of PATH in the tree ROOT, or null if it has no
+     *  such file. */
+    static String find(String root, String path) {
+        Tree t = ObjectStore.readTree(root);
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            String sub = t._dirs.get(path.substring(start, slash));
+            if (sub == null) {
+                return null;
+            }
+            t = ObjectStore.readTree(sub);
+            start = slash + 1;
+        }
+        return t._files.get(path.substring(start));
+    }
+
+    /** Returns every file in the tree ROOT, as a map from paths to blob
+     *  IDs. */
+    static HashMap<String, String> files(String root) {
+        HashMap<String, String> result = new HashMap<>();
+        addFiles(root, "", result);
+        return result;
+    }
+
+    /** Adds the files in the tree ID to RESULT, with DIR before their
+     *  paths. */
+    private static void addFiles(String id, String dir,
+                                 HashMap<String, String> result) {
+        Tree t = ObjectStore.readTree(id);
+        for (Map.Entry<String, String> e : t._files.entrySet()) {
+            result.put(dir + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : t._dirs.entrySet()) {
+            addFiles(e.getValue(), dir + e.getKey() + "/", result);
+        }
+    }
+
+    /** Returns the paths whose blob IDs differ between the trees A and B,
+     *  including those in only one of them.  Subtrees with the same ID in
+     *  both are not read. */
+    static TreeSet<String> changed(String a, String b) {
+        TreeSet<String> result = new TreeSet<>();
+        addChanged(a, b, "", result);
+        return result;
+    }
+
+    /** Adds the paths that differ between the trees A and B (either null
+     *  for an empty tree) to RESULT, with DIR before them. */
+    private static void addChanged(String a, String b, String dir,
+                                   TreeSet<String> result) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Tree ta = a == null ? EMPTY : ObjectStore.readTree(a),
+            tb = b == null ? EMPTY : ObjectStore.readTree(b);
+        TreeSet<String> names = new TreeSet<>(ta._files.keySet());
+        names.addAll(tb._files.keySet());
+        for (String name : names) {
+            if (!Objects.equals(ta._files.get(name), tb._files.get(name))) {
+                result.add(dir + name);
+            }
+        }
+        names = new TreeSet<>(ta._dirs.keySet());
+        names.addAll(tb._dirs.keySet());
+        for (String name : names) {
+            addChanged(ta._dirs.get(name), tb._dirs.get(name),
+                       dir + name + "/", result);
+        }
+    }
+
+    /** Returns the files directly in this tree, by name, as a map that must
+     *  not be changed. */
+    Map<String, String> fileEntries() {
+        return _files;
+    }
+
+    /** Returns the subdirectories of this tree, by name, as a map that
+     *  must not be changed. */
+    Map<String, String> dirEntries() {
+        return _dirs;
+    }
+
+    /** Writes this tree's fields to OUT, in the current format: the
+     *  number of files, each file's name and blob ID, and then the same
+     *  for the subdirectories.  Names are sorted, so each is written as
+     *  the length of the prefix it shares with the name before it and the
+     *  rest of it. */
+    void encode(Codec.Writer out) {
+        encode(_files, out);
+        encode(_dirs, out);
+    }
+
+    /** Writes the number of ENTRIES, and each name and ID, to OUT. */
+    private static void encode(TreeMap<String, String> entries,
+                               Codec.Writer out) {
+        out.varint(entries.size());
+        String last = "";
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            String name = e.getKey();
+            int shared = 0, most = Math.min(name.length(), last.length());
+            while (shared < most
+                   && name.charAt(shared) == last.charAt(shared)) {
+                shared += 1;
+            }
+            out.varint(shared);
+            out.string(name.substring(shared));
+            out.id(e.getValue());
+            last = name;
+        }
+    }
+
+    /** Returns the tree whose fields, in format VERSION, are next in IN. */
+    static Tree decode(Codec.Reader in, int version) {
+        TreeMap<String, String> files = decodeEntries(in);
+        return new Tree(files, decodeEntries(in));
+    }
+
+    /** Returns the names and IDs next in IN, as written by encode. */
+    private static TreeMap<String, String> decodeEntries(Codec.Reader in) {
+        TreeMap<String, String> result = new TreeMap<>();
+        String last = "";
+        for (long n = in.varint(); n > 0; n -= 1) {
+            int shared = (int) in.varint();
+            if (shared > last.length()) {
+                throw Utils.error("malformed tree");
+            }
+            last = last.substring(0, shared) + in.string();
+            result.put(last, in.id());
+        }
+        return result;
+    }
+
+    /** Returns the number of entries in this tree. */
+    int size() {
+        return _files.size() + _dirs.size();
+    }
+
+    /** Blob IDs of the files in this directory, by name. */
+    private final TreeMap<String, String> _files;
+    /** Tree IDs of the subdirectories, by name. */
+    private final TreeMap<String, String> _dirs;
+}
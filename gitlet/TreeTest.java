@@ -0,0 +1,79 @@
+package gitlet;
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+/** Tests for directory trees.
+ * @author Devun Amoranto*/
+public class TreeTest {
+
+    /** Returns the files of a small project. */
+    private HashMap<String, String> project() {
+        HashMap<String, String> files = new HashMap<>();
+        files.put("README", Utils.sha1("readme"));
+        files.put("src/Main.java", Utils.sha1("main"));
+        files.put("src/util/Utils.java", Utils.sha1("utils"));
+        files.put("doc/guide.txt", Utils.sha1("guide"));
+        return files;
+    }
+
+    @Test
+    public void writeAndRead() {
+        HashMap<String, String> files = project();
+        String root = Tree.write(files, true);
+        assertEquals(files, Tree.files(root));
+        assertEquals(Utils.sha1("utils"),
+                     Tree.find(root, "src/util/Utils.java"));
+        assertNull(Tree.find(root, "src/util"));
+        assertNull(Tree.find(root, "lib/x.jar"));
+        assertEquals(root, Tree.write(new HashMap<>(files), true));
+    }
+
+    @Test
+    public void updateSharesSubtrees() {
+        String root = Tree.write(project(), true);
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("doc/guide.txt", Utils.sha1("guide 2"));
+        String next = Tree.update(root, changes, true);
+        Tree a = ObjectStore.readTree(root), b = ObjectStore.readTree(next);
+        assertEquals(a.dirEntries().get("src"), b.dirEntries().get("src"));
+        assertNotEquals(a.dirEntries().get("doc"),
+                        b.dirEntries().get("doc"));
+        HashMap<String, String> expected = project();
+        expected.putAll(changes);
+        assertEquals(expected, Tree.files(next));
+    }
+
+    @Test
+    public void removeDropsEmptyDirectories() {
+        String root = Tree.write(project(), true);
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("doc/guide.txt", null);
+        String next = Tree.update(root, changes, true);
+        assertFalse(ObjectStore.readTree(next).dirEntries()
+                    .containsKey("doc"));
+        HashMap<String, String> all = new HashMap<>();
+        all.put("doc/guide.txt", null);
+        all.put("README", null);
+        all.put("src/Main.java", null);
+        all.put("src/util/Utils.java", null);
+        String empty = Tree.update(root, all, true);
+        assertTrue(Tree.files(empty).isEmpty());
+        assertEquals(Tree.write(new HashMap<>(), true), empty);
+    }
+
+    @Test
+    public void changed() {
+        String root = Tree.write(project(), true);
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("src/util/Utils.java", Utils.sha1("utils 2"));
+        changes.put("README", null);
+        changes.put("new/file.txt", Utils.sha1("new"));
+        String next = Tree.update(root, changes, true);
+        TreeSet<String> expected = new TreeSet<>(changes.keySet());
+        assertEquals(expected, Tree.changed(root, next));
+        assertEquals(expected, Tree.changed(next, root));
+        assertTrue(Tree.changed(root, root).isEmpty());
+    }
+}
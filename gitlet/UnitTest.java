@@ -12,7 +12,12 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(UnitTest.class,
-                CommitTest.class));
+                CommitTest.class, DeltaTest.class,
+                CommitIndexTest.class, CommitGraphTest.class,
+                StateFileTest.class, ObjectCacheTest.class,
+                MergeTest.class, Diff3Test.class, DiffTest.class,
+                MessageIndexTest.class, TreeTest.class,
+                FileMapTest.class, CodecTest.class, ObjectStoreTest.class));
     }
 
     /** A dummy test to avoid complaint. */
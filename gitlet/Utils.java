@@ -1,22 +1,32 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 
 /** Assorted utilities.
@@ -53,12 +63,76 @@ class Utils {
         }
     }
 
+    /** Files at least this long are hashed through memory mappings
+     *  rather than read into a buffer. */
+    static final long MAP_THRESHOLD = 1 << 20;
+
+    /** Largest region of a file mapped at once while hashing it. */
+    static final long MAP_CHUNK = 1 << 26;
+
+    /** Returns the SHA-1 hash of the contents of FILE, read incrementally
+     *  so that FILE is never held in memory all at once.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long size = ch.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                    md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos,
+                                     Math.min(MAP_CHUNK, size - pos)));
+                }
+            } else {
+                ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+                while (ch.read(buf) >= 0) {
+                    buf.flip();
+                    md.update(buf);
+                    buf.clear();
+                }
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** The length of a complete SHA-1 UID in bytes. */
+    static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Returns the 20-byte binary form of the hexadecimal UID ID. */
+    static byte[] uidBytes(String id) {
+        byte[] result = new byte[UID_BYTES];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal form of the binary UID stored in BYTES
+     *  starting at OFFSET. */
+    static String uidString(byte[] bytes, int offset) {
+        StringBuilder result = new StringBuilder(UID_LENGTH);
+        for (int i = offset; i < offset + UID_BYTES; i += 1) {
+            result.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            result.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -132,25 +206,208 @@ class Utils {
         }
     }
 
+    /** Copy the contents of FROM to TO, creating or overwriting it as
+     *  needed, without holding them all in memory.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void copyContents(File from, File to) {
+        try {
+            Files.copy(from.toPath(), to.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
-     *  Throws IllegalArgumentException in case of problems. */
+     *  FILE may be compressed as by writeObject, or hold plain serialized
+     *  bytes.  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        return readObject(openObject(file), expectedClass);
+    }
+
+    /** Return an object of type T read from IN, casting it to
+     *  EXPECTEDCLASS.  IN holds either an object encoded by Codec or the
+     *  serialized bytes of one.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static <T extends Serializable> T readObject(InputStream in,
+                                                 Class<T> expectedClass) {
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
+            if (!in.markSupported()) {
+                in = new BufferedInputStream(in, BUFFER_SIZE);
+            }
+            in.mark(Codec.MAGIC.length);
+            byte[] start = in.readNBytes(Codec.MAGIC.length);
+            in.reset();
+            if (Codec.isEncoded(start)) {
+                try (InputStream encoded = in) {
+                    return expectedClass.cast(
+                        Codec.decode(encoded.readAllBytes()));
+                }
+            }
+            try (ObjectInputStream objects = new Legacy.Input(in)) {
+                return expectedClass.cast(objects.readObject());
+            }
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** Write OBJ to FILE, compressed at compressionLevel() behind an
+     *  OBJECT_MAGIC header.  Commits and trees are written in the form
+     *  given by Codec; anything else is serialized straight into the
+     *  compressor, without first being collected into a byte array. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        try (OutputStream out = compressedOutput(file)) {
+            if (Codec.handles(obj)) {
+                out.write(Codec.encode(obj));
+            } else {
+                ObjectOutputStream objects = new ObjectOutputStream(out);
+                objects.writeObject(obj);
+                objects.flush();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* COMPRESSED OBJECT FILES */
+
+    /** Marks the start of a file written by writeObject.  The byte after
+     *  it is STORED or DEFLATED. */
+    static final byte[] OBJECT_MAGIC = {'G', 'L', 'Z'};
+
+    /** Format byte for contents stored as is. */
+    static final int STORED = 0;
+
+    /** Format byte for contents compressed with a Deflater. */
+    static final int DEFLATED = 1;
+
+    /** Size of the buffers used when streaming objects. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns the level, from 0 (no compression, least CPU) to 9 (best
+     *  compression) at which objects are written.  It is set by the system
+     *  property gitlet.compression or the environment variable
+     *  GITLET_COMPRESSION, and defaults to Deflater.DEFAULT_COMPRESSION. */
+    static int compressionLevel() {
+        String level = System.getProperty("gitlet.compression",
+                                          System.getenv("GITLET_COMPRESSION"));
+        if (level == null) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        try {
+            return Math.max(Deflater.NO_COMPRESSION,
+                            Math.min(Deflater.BEST_COMPRESSION,
+                                     Integer.parseInt(level.trim())));
+        } catch (NumberFormatException excp) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+    }
+
+    /** Returns a stream that writes an OBJECT_MAGIC header to FILE,
+     *  creating or overwriting it, and then compresses whatever is written
+     *  to it at compressionLevel().  Closing the stream closes FILE. */
+    static OutputStream compressedOutput(File file) throws IOException {
+        int level = compressionLevel();
+        OutputStream out = new BufferedOutputStream(
+            Files.newOutputStream(file.toPath()), BUFFER_SIZE);
+        out.write(OBJECT_MAGIC);
+        if (level == Deflater.NO_COMPRESSION) {
+            out.write(STORED);
+            return out;
+        }
+        out.write(DEFLATED);
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /** Returns the offset in FILE, written by compressedOutput or stored
+     *  as is, at which its contents start uncompressed, or -1 if they are
+     *  compressed. */
+    static long rawOffset(File file) {
+        byte[] header = new byte[OBJECT_MAGIC.length + 1];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n = in.readNBytes(header, 0, header.length);
+            if (n < header.length || !Arrays.equals(OBJECT_MAGIC,
+                    Arrays.copyOf(header, OBJECT_MAGIC.length))) {
+                return 0;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return header[OBJECT_MAGIC.length] == STORED ? header.length : -1;
+    }
+
+    /** Returns true iff the contents of FILE start like a file written by
+     *  compressedOutput, so that they cannot be stored without a
+     *  header. */
+    static boolean looksCompressed(File file) throws IOException {
+        byte[] start = new byte[OBJECT_MAGIC.length];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return in.readNBytes(start, 0, start.length) == start.length
+                && Arrays.equals(start, OBJECT_MAGIC);
+        }
+    }
+
+    /** Returns a stream writing a new FILE, which replaces any file there
+     *  rather than being written into it, so that a working file linked
+     *  to a stored object never changes the object. */
+    static OutputStream newFileOutput(File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+        return Files.newOutputStream(file.toPath());
+    }
+
+    /** Returns a stream of the contents of FILE, as written by
+     *  compressedOutput, inflating them as they are read.  Files without
+     *  an OBJECT_MAGIC header are returned as they are. */
+    static InputStream openObject(File file) {
+        try {
+            InputStream in = new BufferedInputStream(
+                Files.newInputStream(file.toPath()), BUFFER_SIZE);
+            in.mark(OBJECT_MAGIC.length + 1);
+            byte[] header = new byte[OBJECT_MAGIC.length + 1];
+            int n = in.readNBytes(header, 0, header.length);
+            if (n < header.length || !Arrays.equals(OBJECT_MAGIC,
+                    Arrays.copyOf(header, OBJECT_MAGIC.length))) {
+                in.reset();
+                return in;
+            }
+            switch (header[OBJECT_MAGIC.length]) {
+            case STORED:
+                return in;
+            case DEFLATED:
+                return new InflaterInputStream(in, new Inflater(),
+                                               BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inf.end();
+                        }
+                    }
+                };
+            default:
+                in.close();
+                throw error("unknown object format in %s", file);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     /* DIRECTORIES */
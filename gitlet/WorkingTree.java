@@ -0,0 +1,117 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/** Parallel scans of the working directory.  Directories are listed by
+ *  separate ForkJoin tasks, and files are hashed (through the StatCache)
+ *  in parallel batches.  Paths are relative to the working directory,
+ *  with '/' between directory names.
+ *  @author Devun Amoranto
+ */
+class WorkingTree {
+
+    /** Largest number of files one task hashes without splitting. */
+    static final int BATCH = 32;
+
+    /** The pool scans run in. */
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    /** Returns the paths of all plain files under the working directory,
+     *  outside .gitlet, in sorted order. */
+    static TreeSet<String> files() {
+        return new TreeSet<>(POOL.invoke(new Lister(new File("."), "")));
+    }
+
+    /** Returns the hashes of those PATHS that name plain files, keyed by
+     *  path, computing them in parallel. */
+    static Map<String, String> hashes(Collection<String> paths) {
+        Map<String, String> result = new ConcurrentHashMap<>();
+        List<String> all = new ArrayList<>(paths);
+        POOL.invoke(new Hasher(all, 0, all.size(), result));
+        return result;
+    }
+
+    /** Lists the files under one directory. */
+    private static class Lister extends RecursiveTask<List<String>> {
+        /** Lists DIR, whose path is PREFIX. */
+        Lister(File dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> result = new ArrayList<>();
+            File[] entries = _dir.listFiles();
+            if (entries == null) {
+                return result;
+            }
+            List<Lister> subdirs = new ArrayList<>();
+            for (File f : entries) {
+                String name = _prefix + f.getName();
+                if (f.isDirectory()) {
+                    if (!name.equals(Main.repository().getName())) {
+                        Lister sub = new Lister(f, name + "/");
+                        sub.fork();
+                        subdirs.add(sub);
+                    }
+                } else if (f.isFile()) {
+                    result.add(name);
+                }
+            }
+            for (Lister sub : subdirs) {
+                result.addAll(sub.join());
+            }
+            return result;
+        }
+
+        /** The directory listed. */
+        private final File _dir;
+        /** Its path, followed by '/' unless empty. */
+        private final String _prefix;
+    }
+
+    /** Hashes a range of paths. */
+    private static class Hasher extends RecursiveAction {
+        /** Hashes PATHS[FROM .. TO) into RESULT. */
+        Hasher(List<String> paths, int from, int to,
+               Map<String, String> result) {
+            _paths = paths;
+            _from = from;
+            _to = to;
+            _result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > BATCH) {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new Hasher(_paths, _from, mid, _result),
+                          new Hasher(_paths, mid, _to, _result));
+                return;
+            }
+            StatCache cache = StatCache.get();
+            for (int i = _from; i < _to; i += 1) {
+                File f = new File(_paths.get(i));
+                if (f.isFile()) {
+                    _result.put(_paths.get(i), cache.hash(f));
+                }
+            }
+        }
+
+        /** All paths being hashed. */
+        private final List<String> _paths;
+        /** Range of _paths hashed by this task. */
+        private final int _from, _to;
+        /** Where hashes go. */
+        private final Map<String, String> _result;
+    }
+}